@@ -8,7 +8,10 @@ import javafx.scene.Parent;
 
 
 import paser.Networkpaser;
+import wrapper.Hotspot;
 import wrapper.SimulationWrapper;
+import wrapper.VehicleDelta;
+import wrapper.WorldSnapshot;
 
 
 import javafx.animation.AnimationTimer;
@@ -16,8 +19,6 @@ import java.util.List;
 import java.util.ArrayList;
 import gui.Transform;
 import javafx.scene.paint.Color;
-import de.tudresden.sumo.objects.SumoColor;
-import de.tudresden.sumo.objects.SumoPosition2D;
 
 import javafx.application.Application;
 import javafx.scene.Scene;
@@ -32,6 +33,7 @@ public class App extends Application {
     private SimulationWrapper simulationWrapper; // Field to hold the simulation wrapper
     private Thread simulationThread; // background simulation stepper
     private volatile boolean simRunning = false; // lưu ý
+    private CtrlDecApp controller; // FXML controller, gets the statistics each pulse
 
     private static final String NET_FILE = "../simulationrealtime/SumoConfig/test_7_huge.net.xml";
     private static final String SUMOCFG_FILE = "../simulationrealtime/SumoConfig/test_7_huge.sumocfg";
@@ -44,7 +46,7 @@ public class App extends Application {
     @Override
     public void start(Stage stage) throws Exception{
         //1. Tải model mạng lưới
-        model = Networkpaser.parse(NET_FILE);
+        model = Networkpaser.load(NET_FILE); // binary cache next to the net.xml after the first run
         // Canvas bản đồ chuyển thành MapCanvas để quản lý pan/zoom/vẽ
         mapCanvas = new MapCanvas(1000, 800);
         mapCanvas.setModel(model);
@@ -65,7 +67,10 @@ public class App extends Application {
 
         //2. Start simulation
         simulationWrapper = new SimulationWrapper(SUMOCFG_FILE); // initialize with SUMO config file
-        simulationWrapper.setDelay(200); //  set step delay in ms
+        simulationWrapper.setRealTimeFactor(5); //  1 s steps every 200 ms of wall clock
+        simulationWrapper.setSkipPublishWhenBehind(true);
+        simulationWrapper.setContextSubscription(true); // all vehicles in one subscription response per step
+        simulationWrapper.setNetwork(model); // per-edge density and speed statistics
         simulationWrapper.Start();
 
         // 3. CONNECT FXML
@@ -86,6 +91,7 @@ public class App extends Application {
         if (controller_fxml != null) {
             controller_fxml.setMapCanvas(mapCanvas, simulationWrapper);
         }
+        controller = controller_fxml;
 
         //6. background thread to advance SUMO steps
         simRunning = true;
@@ -93,68 +99,42 @@ public class App extends Application {
             while (simRunning && !simulationWrapper.isClosed()) {
                 simulationWrapper.Step();
             }
+            simulationWrapper.End(); // here, the running export belongs to this thread
         }, "Sumo-Stepper");
         simulationThread.setDaemon(true);
         simulationThread.start();
 
         //7. UI timer to fetch data and render vehicles
         simulationTimer = new AnimationTimer() {
+            private long lastVersion = -1; // snapshot already handed to mapCanvas
+            private long mapVersion = -1; // vehicle state mapCanvas holds, deltas continue from here
+            private List<Hotspot> shownHotspots = List.of(); // a new list is published whenever it changed
+
             @Override
             public void handle(long now) {
-                List<String> ids = simulationWrapper.getVehicleIDsList();
-                List<MapCanvas.VehicleData> vds = new ArrayList<>();
-
-                if (ids != null) {
-                    for (String id : ids) {
-                        SumoPosition2D pos = simulationWrapper.getVehiclePosition(id);
-                        if (pos == null) continue;
-                        double angle = simulationWrapper.getVehicleAngle(id);
-                        SumoColor sc = simulationWrapper.getVehicleColor(id);
-
-                        //  add vehicke Color
-                        double tempR = ((double)(sc.r & 0xFF))/255;
-                        double tempG = ((double)(sc.g & 0xFF))/255;
-                        double tempB = ((double)(sc.b & 0xFF))/255;
-                        double tempA = ((double)(sc.a & 0xFF))/255;
-                        Color vehicleColor = new Color(tempR, tempG, tempB, tempA);
-                        vds.add(new MapCanvas.VehicleData(id, pos.x, pos.y, angle, vehicleColor));
+                // one consistent view of the last finished step, only rebuilt when a new step was published
+                WorldSnapshot snapshot = simulationWrapper.getSnapshot();
+                if (snapshot.getVersion() != lastVersion) {
+                    lastVersion = snapshot.getVersion();
+                    // only the changed vehicles; a full copy when mapCanvas fell too far behind
+                    VehicleDelta delta = mapVersion < 0 ? null : simulationWrapper.getVehicleDelta(mapVersion);
+                    if (delta == null) {
+                        updateVehicleData(snapshot, now);
+                        mapVersion = snapshot.getVersion();
+                    } else {
+                        mapCanvas.applyVehicleDelta(delta, now);
+                        mapVersion = delta.getToVersion();
+                    }
+                    mapCanvas.setTrafficLights(snapshot); // states only, the lights' lanes never change
+                    List<Hotspot> hotspots = simulationWrapper.getHotspots();
+                    if (hotspots != shownHotspots) {
+                        shownHotspots = hotspots;
+                        mapCanvas.setHotspots(hotspots);
                     }
                 }
-                mapCanvas.setVehicleData(vds);
-                mapCanvas.render();
-
-                // Traffic lights: build lane-end bars data
-                List<MapCanvas.TrafficLightData> tlDatas = new ArrayList<>();
-                List<String> tlIds = simulationWrapper.getTLIDsList();
-                if (tlIds != null) {
-                    for (String tlId : tlIds) {
-                    String def = simulationWrapper.getTLPhaseDef(tlId); // e.g., "rygR..."
-                    if (def == null) continue;
-
-                    List<Character> states = new ArrayList<>();
-                    for (int i = 0; i < def.length(); i++) states.add(def.charAt(i));
-
-                    // Collect from/to lane ids per controlled link
-                    List<String> fromLaneIds = new ArrayList<>();
-                    List<String> toLaneIds = new ArrayList<>();
-                    int links = simulationWrapper.getTLControlledLinksNum(tlId);
-                    for (int i = 0; i < links; i++) {
-                        List<String> defFromTo = simulationWrapper.getTLDefFromTo(tlId, i);
-                        if (defFromTo == null || defFromTo.size() < 3) continue;
-                        // format from wrapper: [stateChar, fromLaneId, toLaneId]
-                        fromLaneIds.add(defFromTo.get(1));
-                        toLaneIds.add(defFromTo.get(2));
-                }
-
-                // Position (x,y) not needed for bar rendering; pass 0,0
-                tlDatas.add(new MapCanvas.TrafficLightData(tlId, 0, 0, states, fromLaneIds, toLaneIds));
-    }
-}
-
-mapCanvas.setTrafficLightData(tlDatas);
-
-                mapCanvas.render();
-
+                // at most one render per pulse, skipped when neither the data nor the view changed
+                mapCanvas.onPulse(now);
+                if (controller != null) controller.updateStatistics(); // only does work when a window closed
             }
         };
         simulationTimer.start();
@@ -175,14 +155,28 @@ mapCanvas.setTrafficLightData(tlDatas);
         stage.setOnCloseRequest(e -> {
             simRunning = false;
             if (simulationTimer != null) simulationTimer.stop();
+            // the stepper ends the simulation after its last step, give it time to complete the export files
             if (simulationThread != null) {
-                try { simulationThread.join(500); } catch (InterruptedException ex) { /* ignore */ }
+                try { simulationThread.join(6000); } catch (InterruptedException ex) { /* ignore */ }
             }
-            simulationWrapper.End();
         });
         // Vẽ lần đầu
         mapCanvas.fitAndCenter();
 
     }
+
+    // hand all vehicles of a snapshot to mapCanvas
+    private void updateVehicleData(WorldSnapshot snapshot, long now) {
+        List<MapCanvas.VehicleData> vds = new ArrayList<>(snapshot.getVehicleCount());
+        for (int i = 0; i < snapshot.getVehicleCount(); i++) {
+            //  add vehicke Color
+            int c = snapshot.getVehicleColor(i);
+            Color vehicleColor = Color.rgb(c >>> 24, (c >>> 16) & 0xFF, (c >>> 8) & 0xFF, (c & 0xFF) / 255.0);
+            vds.add(new MapCanvas.VehicleData(snapshot.getVehicleID(i),
+                    snapshot.getVehicleX(i), snapshot.getVehicleY(i), snapshot.getVehicleAngle(i), vehicleColor));
+        }
+        mapCanvas.setVehicleData(vds, now); // now lets mapCanvas interpolate until the next step
+    }
+
     public static void main(String[] args) {launch(args);}
 }
\ No newline at end of file
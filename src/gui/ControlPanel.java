@@ -5,8 +5,10 @@ import javafx.scene.control.Label;
 import javafx.scene.layout.VBox;
 import javafx.scene.control.ScrollPane;
 import java.util.List;
+import java.util.ArrayList;
 
 import wrapper.SimulationWrapper;
+import wrapper.VehicleSpec;
 
 
 public class ControlPanel {
@@ -59,7 +61,7 @@ public class ControlPanel {
         zoomOutBtn.setOnAction(e 
             -> mapCanvas.zoomAtCenter(0.9));
         resetViewBtn.setOnAction(e 
-            -> { mapCanvas.fitAndCenter(); mapCanvas.render(); });
+            -> mapCanvas.fitAndCenter());
 
         box.getChildren().addAll(viewLbl, zoomInBtn, zoomOutBtn, resetViewBtn);
         ScrollPane sp = new ScrollPane(box);
@@ -68,10 +70,7 @@ public class ControlPanel {
     }
 // control operations
     public void setTLNextPhaseAll() {
-        List<String> TLIDList = sim.getTLIDsList();
-        for (String tlID : TLIDList) {
-            sim.setTLPhaseNext(tlID);
-        }
+        sim.setTLPhaseNextAll();
     } 
     public void addSingleVehicle1() {
         String newID = String.valueOf(uniqueID);
@@ -79,14 +78,16 @@ public class ControlPanel {
         sim.addVehicleBasic(newID);
     }
     public void StressTest1() {
+        List<String> routes = sim.getRouteIDsList();
+        List<VehicleSpec> specs = new ArrayList<>();
         for(int x = 0; x < 5; x++) {
-            int temp = sim.getRouteNum(0);
-            for(int y = 0; y < temp; y++) {
+            for(String route : routes) {
                 String newID = String.valueOf(uniqueID);
                 uniqueID += 1;
-                sim.addVehicleNormal(newID, y);
-                System.out.println("add" + newID + " into "+ x);
+                specs.add(new VehicleSpec(newID, route));
             }
         }
+        sim.addVehicles(specs); // queued, the stepper sends a share after every step
+        System.out.println("add " + specs.size() + " vehicles");
     }
 }
\ No newline at end of file
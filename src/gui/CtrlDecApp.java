@@ -2,10 +2,21 @@ package gui;
 
 import javafx.fxml.FXML;
 import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.layout.StackPane;
 import javafx.event.ActionEvent; // <--- Cần thiết
+import java.io.File;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import wrapper.MetricStore;
+import wrapper.ReportGenerator;
 import wrapper.SimulationWrapper;
+import wrapper.StreamExporter;
 
 public class CtrlDecApp {
     // --- CÁC BIẾN FXML (Giữ nguyên) ---
@@ -14,9 +25,11 @@ public class CtrlDecApp {
     @FXML private MenuButton expType;
     @FXML private MenuItem expTypeCSV;
     @FXML private MenuItem expTypePDF;
+    @FXML private MenuItem expTypeBIN;
+    @FXML private MenuItem expCancel;
     @FXML private Button simPause;
     @FXML private Button simPlay;
-    @FXML private LineChart<?, ?> staSim;
+    @FXML private LineChart<Number, Number> staSim;
     @FXML private TableView<?> staTLTable;
     @FXML private TableView<?> staVehTable;
     @FXML private TextField tlID;
@@ -25,7 +38,7 @@ public class CtrlDecApp {
     @FXML private ColorPicker vehColor;
     @FXML private TextField vehID;
     @FXML private Button vehIn;
-    @FXML private ChoiceBox<?> vehRoute;
+    @FXML private ChoiceBox<String> vehRoute;
 
     // --- BIẾN CỤC BỘ ---
     private MapCanvas mapCanvas;
@@ -33,19 +46,139 @@ public class CtrlDecApp {
 
     private volatile boolean simRunning = false;
     private long idCounter = 0;
+    // staSim: mean speed and vehicle count over the whole run, thinned to the chart width
+    private static final long CHART_INTERVAL_NANOS = 500_000_000L;
+    private XYChart.Series<Number, Number> speedSeries;
+    private XYChart.Series<Number, Number> vehicleSeries;
+    private long lastChartNanos = 0;
+    private double shownTime = Double.NaN;
+    // export: chosen type and the running streaming export
+    private static final String EXPORT_DIR = "exports";
+    private String exportType = "CSV";
+    private StreamExporter exporter;
+    private long shownExportRows = -1;
+    private ReportGenerator report; // PDF being written
+    private static final String ALL_ROUTES = "All routes"; // vehRoute entry for no route filter
 
     // --- HÀM SET MAP (Kết nối với App.java) ---
     // Chỉ cần nhận MapCanvas để hiển thị
     public void setMapCanvas(MapCanvas mapCanvas, SimulationWrapper simulationWrapper) {
         this.mapCanvas = mapCanvas;
+        this.simulationWrapper = simulationWrapper;
 
         if (mapContainer != null) {
-            // Thêm Map vào giao diện
-            mapContainer.getChildren().add(mapCanvas.getCanvas());
-            // Căn chỉnh kích thước
-            mapCanvas.getCanvas().widthProperty().bind(mapContainer.widthProperty());
-            mapCanvas.getCanvas().heightProperty().bind(mapContainer.heightProperty());
+            // Thêm Map vào giao diện (lớp đường + lớp xe), kích thước theo mapContainer
+            mapContainer.getChildren().add(mapCanvas.getNode());
         }
+        if (vehRoute != null) {
+            // routes that had arrivals so far, refreshed whenever the list opens
+            vehRoute.getItems().setAll(ALL_ROUTES);
+            vehRoute.setValue(ALL_ROUTES);
+            vehRoute.setOnShowing(e -> {
+                String chosen = vehRoute.getValue();
+                List<String> routes = new ArrayList<>(simulationWrapper.getTravelTimeRouteIDs());
+                routes.sort(null);
+                routes.add(0, ALL_ROUTES);
+                vehRoute.getItems().setAll(routes);
+                vehRoute.setValue(chosen);
+            });
+        }
+    }
+
+    // redraw staSim from the metric store, call every pulse: at most twice a second and only when
+    // the simulation moved, with no more points than the chart is wide
+    public void updateStatistics() {
+        updateExport();
+        if (simulationWrapper == null || staSim == null) return;
+        long now = System.nanoTime();
+        if (now - lastChartNanos < CHART_INTERVAL_NANOS) return;
+        MetricStore metrics = simulationWrapper.getMetrics();
+        double last = metrics.getLastTime(MetricStore.MEAN_SPEED);
+        if (Double.isNaN(last) || last == shownTime) return;
+        lastChartNanos = now;
+        shownTime = last;
+        if (speedSeries == null) {
+            staSim.setAnimated(false);
+            staSim.setCreateSymbols(false);
+            speedSeries = new XYChart.Series<>();
+            speedSeries.setName("Mean speed (km/h)");
+            vehicleSeries = new XYChart.Series<>();
+            vehicleSeries.setName("Vehicles");
+            staSim.getData().add(speedSeries);
+            staSim.getData().add(vehicleSeries);
+        }
+        int points = Math.max(3, (int) staSim.getWidth());
+        fillSeries(speedSeries, metrics.query(MetricStore.MEAN_SPEED, metrics.getFirstTime(MetricStore.MEAN_SPEED), last, points), 3.6);
+        fillSeries(vehicleSeries, metrics.query(MetricStore.VEHICLES, metrics.getFirstTime(MetricStore.VEHICLES), last, points), 1);
+    }
+    private static void fillSeries(XYChart.Series<Number, Number> target, MetricStore.Points p, double scale) {
+        List<XYChart.Data<Number, Number>> data = new ArrayList<>(p.size());
+        for (int i = 0; i < p.size(); i++) data.add(new XYChart.Data<>(p.t()[i], p.v()[i] * scale));
+        target.getData().setAll(data);
+    }
+
+    // export progress on the export button, cheap when nothing changed
+    private void updateExport() {
+        updateReport();
+        if (exporter == null || expBtn == null) return;
+        if (exporter.isFinished()) {
+            if (exporter.getError() != null) System.out.println("Export stopped: " + exporter.getError());
+            else if (!exporter.isCancelled()) System.out.println("Exported " + exporter.getRowsWritten() + " rows to " + exporter.getVehicleFile());
+            exporter = null;
+            shownExportRows = -1;
+            expBtn.setText("Export");
+            expBtn.setDisable(false);
+            if (expCancel != null) expCancel.setDisable(true);
+            return;
+        }
+        long rows = exporter.getRowsWritten();
+        if (rows == shownExportRows) return;
+        shownExportRows = rows;
+        if (!expBtn.isDisable()) expBtn.setText(String.format("Stop (%,d rows)", rows));
+    }
+
+    // re-enable the export button once the PDF report is written
+    private void updateReport() {
+        if (report == null || !report.isFinished()) return;
+        if (report.getError() != null) System.out.println("Report failed: " + report.getError());
+        else System.out.println("Report written to " + report.getFile() + " (" + report.getPageCount() + " pages, " + report.getMillis() + " ms)");
+        report = null;
+        if (expBtn != null) {
+            expBtn.setText("Export");
+            expBtn.setDisable(false);
+        }
+    }
+
+    // PDF report of the statistics recorded so far, written in the background
+    private void startReport() {
+        if (simulationWrapper == null || report != null) return;
+        new File(EXPORT_DIR).mkdirs();
+        String name = "sim_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + "_report.pdf";
+        // travel times of the vehicles on the route chosen in the vehicle panel
+        String route = vehRoute != null ? vehRoute.getValue() : null;
+        Predicate<String> routeFilter = route == null || ALL_ROUTES.equals(route) ? null : route::equals;
+        report = simulationWrapper.startReport(Path.of(EXPORT_DIR, name), null, routeFilter);
+        expBtn.setText("Writing report...");
+        expBtn.setDisable(true); // enabled again by updateReport
+    }
+
+    // start streaming the chosen type, or stop the running export
+    private void toggleExport() {
+        if (simulationWrapper == null) return;
+        if (exporter != null) {
+            simulationWrapper.stopExport();
+            expBtn.setText("Finishing...");
+            expBtn.setDisable(true); // enabled again by updateExport once the files are closed
+            return;
+        }
+        StreamExporter.Format format = "Binary".equals(exportType) ? StreamExporter.Format.COLUMNAR : StreamExporter.Format.CSV;
+        new File(EXPORT_DIR).mkdirs();
+        String base = EXPORT_DIR + File.separator + "sim_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        exporter = simulationWrapper.startExport(base, format);
+        if (exporter == null) return;
+        shownExportRows = -1;
+        expBtn.setText("Stop");
+        if (expCancel != null) expCancel.setDisable(false);
     }
 
     // --- CÁC HÀM SỰ KIỆN (BẮT BUỘC PHẢI CÓ) ---
@@ -53,8 +186,21 @@ public class CtrlDecApp {
 
     @FXML void simPlayAct(ActionEvent event) { System.out.println("Play clicked"); }
     @FXML void simPauseAct(ActionEvent event) { System.out.println("Pause clicked"); }
-    @FXML void expBtnAct(ActionEvent event) { }
-    @FXML void expTypeAct(ActionEvent event) { }
+    @FXML void expBtnAct(ActionEvent event) {
+        if ("PDF".equals(exportType) && exporter == null) startReport(); // a running stream is still stopped by the button
+        else toggleExport();
+    }
+    @FXML void expTypeAct(ActionEvent event) {
+        if (!(event.getSource() instanceof MenuItem item)) return; // the menu button itself
+        exportType = item.getText();
+        expType.setText(exportType);
+    }
+    @FXML void expCancelAct(ActionEvent event) {
+        if (exporter == null || simulationWrapper == null) return;
+        simulationWrapper.cancelExport();
+        expBtn.setText("Cancelling...");
+        expBtn.setDisable(true);
+    }
     @FXML void tlIDAct(ActionEvent event) { }
     @FXML void tlNPhaseAct(ActionEvent event) { }
     @FXML void tlPhaseAct(ActionEvent event) { }
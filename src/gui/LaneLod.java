@@ -0,0 +1,110 @@
+package gui;
+
+import paser.Networkpaser;
+
+import java.util.Arrays;
+
+/*
+ * Simplified versions of the lane shapes for drawing zoomed out.
+ * Level 0 is the full shape; level i keeps the points Douglas-Peucker needs for an error of TOLERANCES[i - 1]
+ * meters. levelFor picks the coarsest level whose error stays under MAX_ERROR_PX on screen, so a
+ * fit-to-screen frame strokes a few segments per lane instead of every vertex.
+ * Kept point indices are packed per level like the cells of SpatialGrid.
+ */
+class LaneLod {
+    static final double[] TOLERANCES = {0.25, 1.0, 4.0, 16.0}; // meters
+    static final double MAX_ERROR_PX = 0.5;
+
+    private final Networkpaser.Lane[] lanes;
+    private final int[][] start; // [level - 1][lane], points of a lane are idx[level - 1][start .. start of next lane)
+    private final int[][] idx;
+
+    LaneLod(Networkpaser.Lane[] lanes) {
+        this.lanes = lanes;
+        start = new int[TOLERANCES.length][lanes.length + 1];
+        idx = new int[TOLERANCES.length][];
+        boolean[] keep = new boolean[16];
+        int[] stack = new int[32];
+        for (int level = 0; level < TOLERANCES.length; level++) {
+            int[] out = new int[1024];
+            int n = 0;
+            for (int l = 0; l < lanes.length; l++) {
+                start[level][l] = n;
+                Networkpaser.Lane lane = lanes[l];
+                int count = lane.pointCount();
+                if (keep.length < count) {
+                    keep = new boolean[count];
+                    stack = new int[2 * count];
+                }
+                simplify(lane, count, TOLERANCES[level], keep, stack);
+                for (int i = 0; i < count; i++) {
+                    if (!keep[i]) continue;
+                    if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                    out[n++] = i;
+                }
+            }
+            start[level][lanes.length] = n;
+            idx[level] = Arrays.copyOf(out, n);
+        }
+    }
+
+    // coarsest level that stays within MAX_ERROR_PX at pxPerMeter screen pixels per meter
+    int levelFor(double pxPerMeter) {
+        int level = 0;
+        for (int i = 0; i < TOLERANCES.length; i++) {
+            if (TOLERANCES[i] * pxPerMeter <= MAX_ERROR_PX) level = i + 1;
+        }
+        return level;
+    }
+
+    // number of points of lane l at a level
+    int count(int level, int l) {
+        if (level == 0) return lanes[l].pointCount();
+        return start[level - 1][l + 1] - start[level - 1][l];
+    }
+
+    // index (in the full lane shape) of the k-th point of lane l at a level
+    int point(int level, int l, int k) {
+        if (level == 0) return k;
+        return idx[level - 1][start[level - 1][l] + k];
+    }
+
+    // iterative Douglas-Peucker, keep[i] tells whether point i survives
+    private static void simplify(Networkpaser.Lane lane, int count, double tolerance, boolean[] keep, int[] stack) {
+        Arrays.fill(keep, 0, count, false);
+        if (count == 0) return;
+        keep[0] = true;
+        keep[count - 1] = true;
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        double tol2 = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            if (last - first < 2) continue;
+            double ax = lane.x(first), ay = lane.y(first);
+            double bx = lane.x(last), by = lane.y(last);
+            double abx = bx - ax, aby = by - ay;
+            double ab2 = abx * abx + aby * aby;
+            int far = -1;
+            double farDist2 = tol2;
+            for (int i = first + 1; i < last; i++) {
+                double px = lane.x(i) - ax, py = lane.y(i) - ay;
+                double t = ab2 == 0 ? 0 : Math.max(0, Math.min(1, (px * abx + py * aby) / ab2));
+                double dx = px - t * abx, dy = py - t * aby;
+                double d2 = dx * dx + dy * dy;
+                if (d2 > farDist2) {
+                    farDist2 = d2;
+                    far = i;
+                }
+            }
+            if (far < 0) continue;
+            keep[far] = true;
+            stack[top++] = first;
+            stack[top++] = far;
+            stack[top++] = far;
+            stack[top++] = last;
+        }
+    }
+}
@@ -1,37 +1,93 @@
 package gui;
 
 import paser.Networkpaser;
+import wrapper.Hotspot;
+import wrapper.VehicleDelta;
+import wrapper.WorldSnapshot;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Map;
 
-import javafx.geometry.Point2D;
+import javafx.scene.Node;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
 
 public class MapCanvas {
-    private final Canvas canvas; // the drawing surface
+    private static final double ROAD_MARGIN = 200; // px the road layer extends past each side of the view
+
+    private final Canvas canvas; // the drawing surface (transparent overlay: vehicles, traffic lights)
     private final GraphicsContext g; // for drawing
+    private final Canvas roadCanvas; // static road layer beneath the overlay
+    private final GraphicsContext roadG;
+    private final Pane layers; // holds both canvases, clipped to the view
+    // view the road layer was rasterized for; panning within ROAD_MARGIN only moves the layer
+    private boolean roadValid = false;
+    private double rasterScale, rasterOriginX, rasterOriginY;
+    // what changed since the last frame; onPulse renders once if any of them is set
+    private boolean viewDirty = true;
+    private boolean vehiclesDirty = false;
+    private boolean lightsDirty = false;
+    private boolean hotspotsDirty = false;
+    // vehicles are drawn between their last two published positions, by frame time
+    private boolean interpolate = true;
+    private long dataNanos = 0; // frame time the current vehicle data arrived
+    private long stepNanos = 0; // smoothed time between two vehicle data updates
+    private long frameNanos = 0; // time of the frame being drawn
+    private long dataVersion = 0; // bumped per vehicle update, sprites not touched by the last one stand still
+    private final Map<Integer, Color> packedColors = new HashMap<>(); // packed 0xRRGGBBAA -> Color, for deltas
+    private static final double MAX_INTERPOLATION_JUMP = 50.0; // meters, farther moves (teleports) snap
     private final Map<String, VehicleSprite> vehicleSprites = new HashMap<>();
     private Networkpaser.NetworkModel model; // the network model to render
     private final Transform transform; // coordinate transformation manager
     private View viewManager; // view manager for zooming/panning
     private List<VehicleData> vehicleDataList = new ArrayList<>();
     //...
-    private final Map<String, TrafficLightSprite> trafficLightSprites = new HashMap<>();
-    private List<TrafficLightData> trafficLightDataList = new ArrayList<>();
+    // one sprite per traffic light, at the light's index in the snapshots
+    private TrafficLightSprite[] trafficLightSprites = new TrafficLightSprite[0];
+    // congested edges highlighted under the vehicles: lanes and score (0..1) per hotspot
+    private List<Networkpaser.Edge> hotspotEdges = new ArrayList<>();
+    private double[] hotspotScores = new double[0];
 
     protected  double lastDragX = 0, lastDragY = 0; // last mouse drag positions
+    // reused screen coordinate buffers, grown to the longest shape seen
+    private double[] screenXs = new double[64];
+    private double[] screenYs = new double[64];
+    // spatial indexes over the static network, built in setModel
+    private Networkpaser.Lane[] laneItems = new Networkpaser.Lane[0]; // drawable lanes (internal edges skipped)
+    private Networkpaser.Junction[] junctionItems = new Networkpaser.Junction[0];
+    private SpatialGrid laneGrid;
+    private SpatialGrid junctionGrid;
+    private double[] junctionExtent = new double[0]; // larger side of each junction's bounding box, meters
+    private LaneLod laneLod; // simplified lane shapes for zoomed out views
+    private static final double MIN_DETAIL_PX = 1.0; // center dashes and junctions thinner than this are not drawn
+    // vehicles are collected per color and filled as one path per color
+    private final Map<Color, VehicleBucket> vehicleBuckets = new HashMap<>();
+    private final List<VehicleBucket> usedBuckets = new ArrayList<>();
+    private static final double MIN_VEHICLE_PX = 2.0; // shorter vehicles are drawn as points
+    // sin/cos in steps of 0.1 degree
+    private static final int ANGLE_STEPS = 3600;
+    private static final double[] SIN = new double[ANGLE_STEPS];
+    private static final double[] COS = new double[ANGLE_STEPS];
+    static {
+        for (int i = 0; i < ANGLE_STEPS; i++) {
+            SIN[i] = Math.sin(Math.toRadians(i / 10.0));
+            COS[i] = Math.cos(Math.toRadians(i / 10.0));
+        }
+    }
+    // visible world rectangle of the current frame
+    private double viewMinX, viewMinY, viewMaxX, viewMaxY;
 
     public static record VehicleData(String id, double x, double y, double angle, Color color) {}
-    //...
-    // states[i] applies to the controlled link from[i] -> to[i]
-    public static record TrafficLightData(String id, double x, double y, List<Character> states, List<String> fromLaneIds, List<String> toLaneIds) {}
     
 
 
@@ -40,36 +96,64 @@ public class MapCanvas {
     public MapCanvas(double w, double h) {
         canvas = new Canvas(w, h);
         g = canvas.getGraphicsContext2D();
+        roadCanvas = new Canvas(w + 2 * ROAD_MARGIN, h + 2 * ROAD_MARGIN);
+        roadG = roadCanvas.getGraphicsContext2D();
         transform = new Transform(h);
         viewManager = new View(canvas, transform, null);
 
+        // canvases follow the size of the container, the road layer is re-rasterized at the new size
+        canvas.setManaged(false);
+        roadCanvas.setManaged(false);
+        layers = new Pane(roadCanvas, canvas);
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(layers.widthProperty());
+        clip.heightProperty().bind(layers.heightProperty());
+        layers.setClip(clip);
+        layers.widthProperty().addListener((obs, o, n) -> canvas.setWidth(n.doubleValue()));
+        layers.heightProperty().addListener((obs, o, n) -> canvas.setHeight(n.doubleValue()));
+        canvas.widthProperty().addListener((obs, o, n) -> {
+            roadCanvas.setWidth(n.doubleValue() + 2 * ROAD_MARGIN);
+            roadValid = false;
+            viewDirty = true;
+        });
+        canvas.heightProperty().addListener((obs, o, n) -> {
+            roadCanvas.setHeight(n.doubleValue() + 2 * ROAD_MARGIN);
+            roadValid = false;
+            viewDirty = true;
+        });
+
         // Mouse event handlers for panning and zooming
         canvas.addEventHandler(MouseEvent.MOUSE_PRESSED, e -> {
             lastDragX = e.getX();
             lastDragY = e.getY();
             viewManager.startPan(e.getX(), e.getY());
         });
-        // render on drag events
+        // drag and scroll only mark the view, the next pulse draws it once
         canvas.addEventHandler(MouseEvent.MOUSE_DRAGGED, e -> {
             viewManager.updatePan(e.getX(), e.getY());
             lastDragX = e.getX();
             lastDragY = e.getY();
-            render();
+            requestRender();
         });
 
-        // render on scroll events
         canvas.addEventHandler(ScrollEvent.SCROLL, e -> {
             double factor = (e.getDeltaY() > 0) ? 1.1 : 0.9;
             viewManager.zoompoint(factor, e.getX(), e.getY());
-            render();
+            requestRender();
         });
     }
 
     public Canvas getCanvas() { return canvas; }
+    // node to put into the scene: road layer with the overlay canvas on top
+    public Node getNode() { return layers; }
 
     // Set the network model to be rendered
     public void setModel(Networkpaser.NetworkModel model) {
         this.model = model;
+        for (TrafficLightSprite sprite : trafficLightSprites) sprite.bars = null; // lanes changed
+        if (model != null) buildSpatialIndex();
+        roadValid = false;
+        viewDirty = true;
         this.viewManager = new View(canvas, transform, model);
         this.viewManager.resetView();
     }
@@ -80,55 +164,110 @@ public class MapCanvas {
         final String id;
         double worldX, worldY;
         double angle; // in degrees
+        double cos, sin; // of angle, from the lookup table
         Color color;
+        // previous published state, the sprite moves from here to worldX/worldY/angle
+        double prevX, prevY, prevAngle;
+        // position drawn in the current frame
+        double drawX, drawY;
+        long dataVersion; // vehicle update that last moved this sprite
 
         VehicleSprite(String id, double x, double y, double sumoAngleDeg, Color color) {
             this.id = id;
             updatePosition(new double[]{x, y, sumoAngleDeg});
             this.color = color;
+            // a new vehicle starts where it appeared
+            prevX = drawX = worldX;
+            prevY = drawY = worldY;
+            prevAngle = angle;
         }
 
         public void updatePosition(double[] sumoData) {
+            this.prevX = worldX;
+            this.prevY = worldY;
+            this.prevAngle = angle;
             this.worldX = sumoData[0];
             this.worldY = sumoData[1];
             if (sumoData.length > 2) {
                 // SUMO angle (deg) -> JavaFX screen angle (deg)
                 double screenAngle =  (90.0 - sumoData[2]);
                 this.angle = screenAngle;
+                int step = Math.floorMod((int) Math.round(screenAngle * 10), ANGLE_STEPS);
+                this.cos = COS[step];
+                this.sin = SIN[step];
             }
-            updateBounds();
+            advanceVehicleTargets();
         }
 
-        private void updateBounds() {
+        // a move too long for one step (teleport) starts from the new position instead of sliding there
+        private void advanceVehicleTargets() {
+            if (Math.hypot(worldX - prevX, worldY - prevY) > MAX_INTERPOLATION_JUMP) { // teleported
+                prevX = worldX;
+                prevY = worldY;
+                prevAngle = angle;
+            }
+        }
+
+        // place the sprite at fraction alpha (0..1) of the way from the previous state
+        void interpolate(double alpha) {
+            drawX = prevX + (worldX - prevX) * alpha;
+            drawY = prevY + (worldY - prevY) * alpha;
+            double turn = ((angle - prevAngle) % 360 + 540) % 360 - 180; // shortest way round
+            int step = Math.floorMod((int) Math.round((prevAngle + turn * alpha) * 10), ANGLE_STEPS);
+            cos = COS[step];
+            sin = SIN[step];
         }
     }
     //...
 
+    // screen positions of the vehicles of one color in the current frame
+    private static class VehicleBucket {
+        final Color color;
+        double[] xy = new double[64]; // x, y, cos, sin per vehicle
+        int count = 0;
+
+        VehicleBucket(Color color) {
+            this.color = color;
+        }
+
+        void add(double x, double y, double cos, double sin) {
+            if (4 * count + 4 > xy.length) xy = Arrays.copyOf(xy, xy.length * 2);
+            xy[4 * count] = x;
+            xy[4 * count + 1] = y;
+            xy[4 * count + 2] = cos;
+            xy[4 * count + 3] = sin;
+            count++;
+        }
+    }
+
     private static class TrafficLightSprite {
         final String id;
-        double worldX, worldY;
-        List<Character> states; // r/y/g for each controlled link
+        String state; // r/y/g for each controlled link, the snapshot's string as is; null before the first result
+        final String[] fromLaneIds; // incoming lane of each controlled link
+        // world end points of the bar of every link (x1, y1, x2, y2), NaN if its lane is unknown; null = not built yet
+        double[] bars;
 
-        TrafficLightSprite(String id, double x, double y, List<Character> states) {
+        TrafficLightSprite(String id, String[] fromLaneIds) {
             this.id = id;
-            this.worldX = x;
-            this.worldY = y;
-            this.states = new ArrayList<>(states);
-        }
-
-        void update(double x, double y, List<Character> states) {
-            this.worldX = x;
-            this.worldY = y;
-            this.states = new ArrayList<>(states);
+            this.fromLaneIds = fromLaneIds;
         }
     }
 
     // Set vehicle data for rendering
     public void setVehicleData(List<VehicleData> vehicleDataList) {
+        setVehicleData(vehicleDataList, System.nanoTime());
+    }
+
+    // now is the AnimationTimer time of the frame that received the data, used for interpolation.
+    // Replaces every sprite, use applyVehicleDelta when only the changes are known
+    public void setVehicleData(List<VehicleData> vehicleDataList, long now) {
         this.vehicleDataList = vehicleDataList;
+        startVehicleUpdate(now);
 
         // update or create vehicle sprites
+        Set<String> present = new HashSet<>(vehicleDataList.size() * 2);
         for (VehicleData vd : vehicleDataList) {
+            present.add(vd.id());
             VehicleSprite sprite = vehicleSprites.get(vd.id());
             if (sprite == null) {
                 sprite = new VehicleSprite(vd.id(), vd.x(), vd.y(), vd.angle(), vd.color());
@@ -137,87 +276,275 @@ public class MapCanvas {
                 sprite.color = vd.color();
                 sprite.updatePosition(new double[]{vd.x(), vd.y(), vd.angle()});
             }
+            sprite.dataVersion = dataVersion;
         }
         //delete sprites for vehicles no longer present
-        vehicleSprites.keySet().removeIf(id ->
-            vehicleDataList.stream().noneMatch(vd -> vd.id().equals(id))
-        );
+        vehicleSprites.keySet().retainAll(present);
     }
 
-
-//...
-    // Set traffic light data for rendering (call from wrapper)
-    public void setTrafficLightData(List<TrafficLightData> trafficLights) {
-        this.trafficLightDataList = trafficLights != null ? trafficLights : List.of();
-        for (TrafficLightData tl : this.trafficLightDataList) {
-            TrafficLightSprite sprite = trafficLightSprites.get(tl.id());
+    // apply only what changed since the previous update, O(changes) instead of O(vehicles)
+    public void applyVehicleDelta(VehicleDelta delta, long now) {
+        startVehicleUpdate(now);
+        for (int i = 0; i < delta.getRemovedCount(); i++) {
+            vehicleSprites.remove(delta.getRemovedID(i));
+        }
+        int n = delta.getAddedCount() + delta.getMovedCount();
+        for (int i = 0; i < n; i++) {
+            String id = delta.getID(i);
+            Color color = packedColor(delta.getColor(i));
+            VehicleSprite sprite = vehicleSprites.get(id);
             if (sprite == null) {
-                sprite = new TrafficLightSprite(tl.id(), tl.x(), tl.y(), tl.states());
-                trafficLightSprites.put(tl.id(), sprite);
+                sprite = new VehicleSprite(id, delta.getX(i), delta.getY(i), delta.getAngle(i), color);
+                vehicleSprites.put(id, sprite);
             } else {
-                sprite.update(tl.x(), tl.y(), tl.states());
+                sprite.color = color;
+                sprite.updatePosition(new double[]{delta.getX(i), delta.getY(i), delta.getAngle(i)});
             }
+            sprite.dataVersion = dataVersion;
+        }
+    }
+
+    // common part of both vehicle updates: timing for interpolation
+    private void startVehicleUpdate(long now) {
+        vehiclesDirty = true;
+        dataVersion++;
+        if (dataNanos != 0) {
+            long interval = now - dataNanos;
+            if (stepNanos == 0) stepNanos = interval;
+            else if (interval < 4 * stepNanos) stepNanos = (stepNanos * 3 + interval) / 4; // longer gaps are pauses
+        }
+        dataNanos = now;
+    }
+
+    private Color packedColor(int c) {
+        Color color = packedColors.get(c);
+        if (color == null) {
+            if (packedColors.size() > 4096) packedColors.clear(); // many one-off colors, start over
+            color = Color.rgb(c >>> 24, (c >>> 16) & 0xFF, (c >>> 8) & 0xFF, (c & 0xFF) / 255.0);
+            packedColors.put(c, color);
+        }
+        return color;
+    }
+
+
+//...
+    // Set the traffic light states of a snapshot. Sprites are matched by index, the controlled lanes are only
+    // read when a light is new, so a step costs one string per light and no copies
+    public void setTrafficLights(WorldSnapshot snapshot) {
+        int count = snapshot.getTLCount();
+        if (trafficLightSprites.length != count) trafficLightSprites = new TrafficLightSprite[count];
+        for (int t = 0; t < count; t++) {
+            TrafficLightSprite sprite = trafficLightSprites[t];
+            if (sprite == null || !sprite.id.equals(snapshot.getTLID(t))) {
+                String[] fromLaneIds = new String[snapshot.getTLLinkCount(t)];
+                for (int i = 0; i < fromLaneIds.length; i++) fromLaneIds[i] = snapshot.getTLFromLane(t, i);
+                sprite = new TrafficLightSprite(snapshot.getTLID(t), fromLaneIds);
+                trafficLightSprites[t] = sprite;
+                lightsDirty = true;
+            }
+            String state = snapshot.getTLState(t);
+            if (state != null && !state.equals(sprite.state)) lightsDirty = true; // redraw only when a light switched
+            sprite.state = state;
         }
-        trafficLightSprites.keySet().removeIf(id ->
-            trafficLightDataList.stream().noneMatch(tl -> tl.id().equals(id))
-        );
     }
 
 
     
 
-    // Offset polyline points by distance d
-    private List<Point2D> offsetPolyline(List<Point2D> pts, double d) {
-        if (pts.size() < 2) return pts;
-        List<Point2D> out = new ArrayList<>();
-        for (int i = 0; i < pts.size(); i++) {
-            Point2D p = pts.get(i);
-            Point2D dir;
-            if (i == 0) {
-                dir = pts.get(i + 1).subtract(p);
-            } else if (i == pts.size() - 1) {
-                dir = p.subtract(pts.get(i - 1));
-            } else {
-                Point2D d1 = p.subtract(pts.get(i - 1));
-                Point2D d2 = pts.get(i + 1).subtract(p);
-                dir = d1.add(d2);
+    // highlight congested edges, worst first as SimulationWrapper.getHotspots returns them
+    public void setHotspots(List<Hotspot> hotspots) {
+        hotspotEdges = new ArrayList<>(hotspots.size());
+        hotspotScores = new double[hotspots.size()];
+        for (Hotspot h : hotspots) {
+            Networkpaser.Edge edge = model == null ? null : model.getEdge(h.edgeID());
+            if (edge == null) continue;
+            hotspotScores[hotspotEdges.size()] = h.score();
+            hotspotEdges.add(edge);
+        }
+        hotspotsDirty = true;
+    }
+
+    // grid over lane and junction bounding boxes so render only visits what is on screen
+    private void buildSpatialIndex() {
+        List<Networkpaser.Lane> lanes = new ArrayList<>();
+        for (Networkpaser.Edge e : model.edges) { // skip internal edges
+            if (e.id.startsWith(":")) continue;
+            for (Networkpaser.Lane lane : e.lanes) {
+                if (lane.pointCount() >= 2) lanes.add(lane);
             }
-            double len = Math.hypot(dir.getX(), dir.getY());
-            if (len == 0) len = 1;
-            double nx = -dir.getY() / len;
-            double ny =  dir.getX() / len;
-            out.add(new Point2D(p.getX() + nx * d, p.getY() + ny * d));
         }
-        return out;
+        laneItems = lanes.toArray(new Networkpaser.Lane[0]);
+        double[] boxes = new double[laneItems.length * 4];
+        for (int i = 0; i < laneItems.length; i++) {
+            Networkpaser.Lane lane = laneItems[i];
+            boundingBox(boxes, i, lane.pointCount(), lane.shapeOffset, lane.geometry);
+        }
+        laneGrid = new SpatialGrid(boxes, laneItems.length);
+        laneLod = new LaneLod(laneItems);
+
+        List<Networkpaser.Junction> junctions = new ArrayList<>();
+        for (Networkpaser.Junction j : model.junctions) {
+            if (j.pointCount() >= 3) junctions.add(j);
+        }
+        junctionItems = junctions.toArray(new Networkpaser.Junction[0]);
+        boxes = new double[junctionItems.length * 4];
+        for (int i = 0; i < junctionItems.length; i++) {
+            Networkpaser.Junction j = junctionItems[i];
+            boundingBox(boxes, i, j.pointCount(), j.shapeOffset, j.geometry);
+        }
+        junctionExtent = new double[junctionItems.length];
+        for (int i = 0; i < junctionItems.length; i++) {
+            junctionExtent[i] = Math.max(boxes[4 * i + 2] - boxes[4 * i], boxes[4 * i + 3] - boxes[4 * i + 1]);
+        }
+        junctionGrid = new SpatialGrid(boxes, junctionItems.length);
     }
-    // Draw polyline from list of points
-    private void drawPolyline(GraphicsContext g, List<Point2D> pts) {
-        for (int i = 1; i < pts.size(); i++) {
-            Point2D a = pts.get(i - 1);
-            Point2D b = pts.get(i);
-            g.strokeLine(a.getX(), a.getY(), b.getX(), b.getY());
+    private static void boundingBox(double[] boxes, int item, int count, int offset, Networkpaser.Geometry geometry) {
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            double x = geometry.x(offset + i), y = geometry.y(offset + i);
+            if (x < x0) x0 = x;
+            if (y < y0) y0 = y;
+            if (x > x1) x1 = x;
+            if (y > y1) y1 = y;
+        }
+        boxes[4 * item] = x0;
+        boxes[4 * item + 1] = y0;
+        boxes[4 * item + 2] = x1;
+        boxes[4 * item + 3] = y1;
+    }
+    // world rectangle under the canvas grown by screenMargin px, plus margin meters on every side
+    private void updateViewRect(double screenMargin, double margin) {
+        double ax = transform.screenworldX(-screenMargin), bx = transform.screenworldX(canvas.getWidth() + screenMargin);
+        double ay = transform.screenworldY(-screenMargin), by = transform.screenworldY(canvas.getHeight() + screenMargin);
+        viewMinX = Math.min(ax, bx) - margin;
+        viewMaxX = Math.max(ax, bx) + margin;
+        viewMinY = Math.min(ay, by) - margin;
+        viewMaxY = Math.max(ay, by) + margin;
+    }
+    private boolean inView(double x, double y) {
+        return x >= viewMinX && x <= viewMaxX && y >= viewMinY && y <= viewMaxY;
+    }
+    // whether the bounding box of a lane touches the view rectangle
+    private boolean laneInView(Networkpaser.Lane lane) {
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < lane.pointCount(); i++) {
+            x0 = Math.min(x0, lane.x(i));
+            y0 = Math.min(y0, lane.y(i));
+            x1 = Math.max(x1, lane.x(i));
+            y1 = Math.max(y1, lane.y(i));
+        }
+        return x1 >= viewMinX && x0 <= viewMaxX && y1 >= viewMinY && y0 <= viewMaxY;
+    }
+
+    // make sure the screen buffers can hold n points
+    private void ensureScreenCapacity(int n) {
+        if (screenXs.length >= n) return;
+        int size = Math.max(n, screenXs.length * 2);
+        screenXs = new double[size];
+        screenYs = new double[size];
+    }
+    // transform lane item l at a detail level into screenXs/screenYs, returns the number of points
+    private int toScreen(int l, int level) {
+        Networkpaser.Lane lane = laneItems[l];
+        int n = laneLod.count(level, l);
+        ensureScreenCapacity(n);
+        for (int k = 0; k < n; k++) {
+            int i = laneLod.point(level, l, k);
+            screenXs[k] = transform.worldscreenX(lane.x(i));
+            screenYs[k] = transform.worldscreenY(lane.y(i));
+        }
+        return n;
+    }
+    // transform the shape of a junction into screenXs/screenYs
+    private void toScreen(Networkpaser.Junction j) {
+        int n = j.pointCount();
+        ensureScreenCapacity(n);
+        for (int i = 0; i < n; i++) {
+            screenXs[i] = transform.worldscreenX(j.x(i));
+            screenYs[i] = transform.worldscreenY(j.y(i));
+        }
+    }
+
+    // Draw polyline from the first n points
+    private void drawPolyline(GraphicsContext g, double[] xs, double[] ys, int n) {
+        for (int i = 1; i < n; i++) {
+            g.strokeLine(xs[i - 1], ys[i - 1], xs[i], ys[i]);
         }
     }
 
+    // the view (pan, zoom, size) changed, draw it on the next pulse
+    public void requestRender() {
+        viewDirty = true;
+    }
+
+    // call once per AnimationTimer pulse: renders at most once, and not at all if nothing changed
+    public void onPulse(long now) {
+        boolean moving = interpolate && stepNanos > 0 && now - dataNanos < stepNanos; // still between two states
+        if (!viewDirty && !vehiclesDirty && !lightsDirty && !hotspotsDirty && !moving) return;
+        draw(now);
+    }
+
+    // draw vehicles between steps (true) or at their last published position (false)
+    public void setInterpolation(boolean input) {
+        interpolate = input;
+        vehiclesDirty = true;
+    }
+
+    // draw now, prefer requestRender/onPulse so several changes share one frame.
+    // System.nanoTime is the clock AnimationTimer pulses use, so vehicles are placed for the current time
     public void render() {
+        draw(System.nanoTime());
+    }
+
+    // now = time of the frame, vehicles are interpolated for it
+    private void draw(long now) {
+        frameNanos = now;
+        viewDirty = vehiclesDirty = lightsDirty = hotspotsDirty = false;
         if (model == null) return;
-        // Clear canvas
+        // the road layer is only redrawn when the zoom changed or the pan left its margin
+        double originX = transform.worldscreenX(0), originY = transform.worldscreenY(0);
+        double dx = originX - rasterOriginX, dy = originY - rasterOriginY;
+        if (!roadValid || transform.worldscreenSize(1) != rasterScale
+                || Math.abs(dx) > ROAD_MARGIN || Math.abs(dy) > ROAD_MARGIN) {
+            renderRoads();
+            rasterScale = transform.worldscreenSize(1);
+            rasterOriginX = originX;
+            rasterOriginY = originY;
+            roadValid = true;
+            dx = dy = 0;
+        }
+        roadCanvas.setTranslateX(dx - ROAD_MARGIN);
+        roadCanvas.setTranslateY(dy - ROAD_MARGIN);
+
+        // Clear overlay
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        renderOverlay();
+    }
+
+    // rasterize junctions and lanes of the view plus ROAD_MARGIN into the road layer
+    private void renderRoads() {
+        GraphicsContext g = roadG; // same drawing code as before, on the road layer
         g.setFill(Color.WHITE);
-        g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        g.fillRect(0, 0, roadCanvas.getWidth(), roadCanvas.getHeight());
+        g.save();
+        g.translate(ROAD_MARGIN, ROAD_MARGIN); // layer pixel (ROAD_MARGIN, ROAD_MARGIN) is view pixel (0, 0)
+
+        // only what intersects the visible world rectangle is drawn, margin covers road width
+        updateViewRect(ROAD_MARGIN, 5.0);
+        int junctionCount = junctionGrid.query(viewMinX, viewMinY, viewMaxX, viewMaxY);
+        int[] visibleJunctions = junctionGrid.results();
 
         // Draw roads
+        double pxPerMeter = transform.worldscreenSize(1);
         Color roadFill = Color.web("#210303ff");
         g.setFill(roadFill);
-        for (Networkpaser.Junction j : model.junctions) {
-            if (j.shapePoints == null || j.shapePoints.size() < 3) continue;
-            double[] xs = new double[j.shapePoints.size()];
-            double[] ys = new double[j.shapePoints.size()];
-            for (int i = 0; i < j.shapePoints.size(); i++) {
-                Point2D p = j.shapePoints.get(i);
-                xs[i] = transform.worldscreenX(p.getX());
-                ys[i] = transform.worldscreenY(p.getY());
-            }
-            g.fillPolygon(xs, ys, xs.length);
+        for (int k = 0; k < junctionCount; k++) {
+            if (junctionExtent[visibleJunctions[k]] * pxPerMeter < MIN_DETAIL_PX) continue; // sub-pixel
+            Networkpaser.Junction j = junctionItems[visibleJunctions[k]];
+            toScreen(j);
+            g.fillPolygon(screenXs, screenYs, j.pointCount());
         }
 
         // add sizes for roads
@@ -227,50 +554,61 @@ public class MapCanvas {
         // Convert to pixels based on current transform (scale * zoom)
         double roadsizePx = transform.worldscreenSize(roadsize);
         double centermarksizePx = transform.worldscreenSize(centermarksize);
-        for (Networkpaser.Edge e : model.edges) { // skip internal edges
-            if (e.id.startsWith(":")) continue;
-            for (Networkpaser.Lane lane : e.lanes) {
-                if (lane.shapePoints.size() < 2) continue;
-                List<Point2D> screenPts = new ArrayList<>(); // transformed points
-                for (Point2D p : lane.shapePoints) {
-                    screenPts.add(new Point2D(
-                        transform.worldscreenX(p.getX()),
-                        transform.worldscreenY(p.getY())
-                    ));
-                }
-                g.setStroke(roadFill); 
-                g.setLineWidth(roadsizePx * 2); // full road width in px
-                g.setLineDashes();
-                drawPolyline(g, screenPts);
-
-                // Draw center line inside the road
-                List<Point2D> centerline = offsetPolyline(screenPts, 0.0);
-                g.setStroke(Color.web("#bb87a7ff"));
-                g.setLineWidth(centermarksizePx);
-                g.setLineDashes(18, 12); // optionally scale dash lengths too
-                drawPolyline(g, centerline);
-            }
+        Color centerMark = Color.web("#bb87a7ff");
+        boolean drawCenterLine = centermarksizePx >= MIN_DETAIL_PX;
+        int level = laneLod.levelFor(pxPerMeter); // coarser shapes when zoomed out
+        int laneCount = laneGrid.query(viewMinX, viewMinY, viewMaxX, viewMaxY);
+        int[] visibleLanes = laneGrid.results();
+        for (int k = 0; k < laneCount; k++) { // internal edges are not in the grid
+            int n = toScreen(visibleLanes[k], level); // transformed points
+            g.setStroke(roadFill); 
+            g.setLineWidth(roadsizePx * 2); // full road width in px
+            g.setLineDashes();
+            drawPolyline(g, screenXs, screenYs, n);
+
+            // Draw center line inside the road
+            if (!drawCenterLine) continue;
+            g.setStroke(centerMark);
+            g.setLineWidth(centermarksizePx);
+            g.setLineDashes(18, 12); // optionally scale dash lengths too
+            drawPolyline(g, screenXs, screenYs, n);
         }
 
         // Draw junctions
         Color junctionFill = Color.web("#210303ff");
         g.setFill(junctionFill);
-        for (Networkpaser.Junction j : model.junctions) {
+        for (int k = 0; k < junctionCount; k++) {
+            Networkpaser.Junction j = junctionItems[visibleJunctions[k]];
             if (j.id != null && j.id.contains(":")) continue; // skip internal junctions
-            if (j.shapePoints == null || j.shapePoints.size() < 3) continue;
-
-            double[] xs = new double[j.shapePoints.size()];
-            double[] ys = new double[j.shapePoints.size()];
-            for (int i = 0; i < j.shapePoints.size(); i++) {
-                Point2D p = j.shapePoints.get(i);
-                xs[i] = transform.worldscreenX(p.getX());
-                ys[i] = transform.worldscreenY(p.getY());
-            }
-            g.fillPolygon(xs, ys, xs.length);
-        }
-
+            if (junctionExtent[visibleJunctions[k]] * pxPerMeter < MIN_DETAIL_PX) continue;
 
+            toScreen(j);
+            g.fillPolygon(screenXs, screenYs, j.pointCount());
+        }
+        g.restore();
+    }
 
+    // vehicles and traffic lights, drawn every frame on the transparent overlay
+    private void renderOverlay() {
+        // margin covers vehicle length and bar size
+        updateViewRect(0, 5.0);
+
+        // hotspots, a translucent band over each lane of a congested edge, stronger for worse congestion
+        g.setLineDashes();
+        g.setLineWidth(Math.max(4.0, transform.worldscreenSize(6.0)));
+        for (int h = hotspotEdges.size() - 1; h >= 0; h--) { // worst last, on top
+            g.setStroke(Color.rgb(255, 40, 0, 0.25 + 0.6 * Math.min(1, hotspotScores[h])));
+            for (Networkpaser.Lane lane : hotspotEdges.get(h).lanes) {
+                int n = lane.pointCount();
+                if (n < 2 || !laneInView(lane)) continue;
+                ensureScreenCapacity(n);
+                for (int i = 0; i < n; i++) {
+                    screenXs[i] = transform.worldscreenX(lane.x(i));
+                    screenYs[i] = transform.worldscreenY(lane.y(i));
+                }
+                g.strokePolyline(screenXs, screenYs, n);
+            }
+        }
 
         // draw vehicles
         final double VEHICLE_LENGTH = 4.5;
@@ -278,90 +616,121 @@ public class MapCanvas {
         final double VEHICLE_LENGTH_PX = transform.worldscreenSize(VEHICLE_LENGTH);
         final double VEHICLE_WIDTH_PX = transform.worldscreenSize(VEHICLE_WIDTH);
 
+        // how far the frame is between the previous and the last published state
+        double alpha = 1.0;
+        if (interpolate && stepNanos > 0) alpha = Math.max(0.0, Math.min(1.0, (double) (frameNanos - dataNanos) / stepNanos));
+
+        // bucket the visible vehicles by color
+        if (vehicleBuckets.size() > 256) vehicleBuckets.clear(); // many one-off colors, start over
         for (VehicleSprite sprite : vehicleSprites.values()) {
-            double screenX = transform.worldscreenX(sprite.worldX);
-            double screenY = transform.worldscreenY(sprite.worldY);
-
-            g.save();
-            g.translate(screenX, screenY);
-            g.rotate(sprite.angle);
-            
-            g.setFill(sprite.color);
-            // draw centered rectangle
-            g.fillRect(
-                -VEHICLE_LENGTH_PX,
-                -VEHICLE_WIDTH_PX / 2.0,
-                VEHICLE_LENGTH_PX,
-                VEHICLE_WIDTH_PX
-            );
-            g.restore();
+            sprite.interpolate(sprite.dataVersion == dataVersion ? alpha : 1.0); // untouched sprites did not move
+            if (!inView(sprite.drawX, sprite.drawY)) continue;
+            VehicleBucket bucket = vehicleBuckets.get(sprite.color);
+            if (bucket == null) {
+                bucket = new VehicleBucket(sprite.color);
+                vehicleBuckets.put(sprite.color, bucket);
+            }
+            if (bucket.count == 0) usedBuckets.add(bucket);
+            bucket.add(transform.worldscreenX(sprite.drawX), transform.worldscreenY(sprite.drawY), sprite.cos, sprite.sin);
+        }
+
+        boolean asPoints = VEHICLE_LENGTH_PX < MIN_VEHICLE_PX;
+        double halfW = VEHICLE_WIDTH_PX / 2.0;
+        for (VehicleBucket bucket : usedBuckets) {
+            double[] xy = bucket.xy;
+            g.setFill(bucket.color);
+            g.beginPath();
+            for (int i = 0; i < bucket.count; i++) {
+                double x = xy[4 * i], y = xy[4 * i + 1];
+                if (asPoints) {
+                    g.rect(x - MIN_VEHICLE_PX / 2.0, y - MIN_VEHICLE_PX / 2.0, MIN_VEHICLE_PX, MIN_VEHICLE_PX);
+                    continue;
+                }
+                // rectangle from the front bumper (x, y) back by the vehicle length, rotated by the sprite angle
+                double c = xy[4 * i + 2], s = xy[4 * i + 3];
+                double lx = -VEHICLE_LENGTH_PX * c, ly = -VEHICLE_LENGTH_PX * s; // along the vehicle
+                double wx = -halfW * s, wy = halfW * c; // across the vehicle
+                g.moveTo(x - wx, y - wy);
+                g.lineTo(x + wx, y + wy);
+                g.lineTo(x + lx + wx, y + ly + wy);
+                g.lineTo(x + lx - wx, y + ly - wy);
+                g.closePath();
+            }
+            g.fill();
+            bucket.count = 0;
         }
+        usedBuckets.clear();
 
         //...
 
-        // draw traffic lights as lane-end bars similar to SUMO GUI
-        final double BAR_LENGTH = transform.worldscreenSize(2.0);
+        // draw traffic lights as lane-end bars similar to SUMO GUI, bar geometry is built once per light
         final double BAR_WIDTH = transform.worldscreenSize(0.6);
-        for (TrafficLightData tlData : trafficLightDataList) {
-            List<Character> states = tlData.states();
-            List<String> fromIds = tlData.fromLaneIds();
-            if (states == null || fromIds == null) continue;
-            int n = Math.min(states.size(), fromIds.size());
+        g.setLineWidth(BAR_WIDTH);
+        g.setLineDashes();
+        for (TrafficLightSprite sprite : trafficLightSprites) {
+            String state = sprite.state;
+            if (state == null) continue;
+            if (sprite.bars == null) sprite.bars = buildBars(sprite.fromLaneIds);
+            double[] bars = sprite.bars;
+            int n = Math.min(state.length(), bars.length / 4);
             for (int i = 0; i < n; i++) {
-                Networkpaser.Lane lane = findLaneById(fromIds.get(i));
-                if (lane == null || lane.shapePoints.size() < 2) continue;
-                // use the last segment of the lane polyline to place the bar
-                Point2D p2 = lane.shapePoints.get(lane.shapePoints.size()-1);
-                Point2D p1 = lane.shapePoints.get(lane.shapePoints.size()-2);
-                // transform to screen
-                Point2D s1 = new Point2D(transform.worldscreenX(p1.getX()), transform.worldscreenY(p1.getY()));
-                Point2D s2 = new Point2D(transform.worldscreenX(p2.getX()), transform.worldscreenY(p2.getY()));
-                // direction and normal
-                Point2D dir = s2.subtract(s1);
-                double len = Math.hypot(dir.getX(), dir.getY());
-                if (len == 0) continue;
-                Point2D unit = new Point2D(dir.getX()/len, dir.getY()/len);
-                Point2D normal = new Point2D(-unit.getY(), unit.getX());
-                // center of bar slightly before junction along lane direction
-                double cx = s2.getX() - unit.getX() * transform.worldscreenSize(1.0);
-                double cy = s2.getY() - unit.getY() * transform.worldscreenSize(1.0);
-                // bar endpoints across lane using normal
-                double hx = normal.getX() * (BAR_LENGTH/2.0);
-                double hy = normal.getY() * (BAR_LENGTH/2.0);
-                double x1 = cx - hx, y1 = cy - hy;
-                double x2 = cx + hx, y2 = cy + hy;
+                if (Double.isNaN(bars[4 * i]) || !inView(bars[4 * i], bars[4 * i + 1])) continue;
                 // color by state
                 Color c;
-                char st = states.get(i);
+                char st = state.charAt(i);
                 if (st == 'r' || st == 'R') c = Color.RED;
                 else if (st == 'y' || st == 'Y') c = Color.YELLOW;
                 else if (st == 'g' || st == 'G') c = Color.LIMEGREEN;
                 else c = Color.GRAY;
                 g.setStroke(c);
-                g.setLineWidth(BAR_WIDTH);
-                g.setLineDashes();
-                g.strokeLine(x1, y1, x2, y2);
+                g.strokeLine(transform.worldscreenX(bars[4 * i]), transform.worldscreenY(bars[4 * i + 1]),
+                             transform.worldscreenX(bars[4 * i + 2]), transform.worldscreenY(bars[4 * i + 3]));
             }
         }
     }
 
-    private Networkpaser.Lane findLaneById(String laneId) {
-        if (laneId == null || model == null) return null;
-        for (Networkpaser.Edge e : model.edges) {
-            for (Networkpaser.Lane l : e.lanes) {
-                if (laneId.equals(l.id)) return l;
-            }
+    // world end points of the lane-end bar of every controlled link (x1, y1, x2, y2 per link)
+    private double[] buildBars(String[] fromIds) {
+        final double BAR_LENGTH = 2.0; // across the lane, in meters
+        final double BAR_BACK = 1.0; // distance before the end of the lane
+        double[] bars = new double[fromIds.length * 4];
+        Arrays.fill(bars, Double.NaN);
+        if (model == null) return bars;
+        for (int i = 0; i < fromIds.length; i++) {
+            Networkpaser.Lane lane = model.getLane(fromIds[i]);
+            if (lane == null || lane.pointCount() < 2) continue;
+            // use the last segment of the lane polyline to place the bar
+            int last = lane.pointCount() - 1;
+            double p1x = lane.x(last - 1), p1y = lane.y(last - 1);
+            double p2x = lane.x(last), p2y = lane.y(last);
+            // direction and normal
+            double dirX = p2x - p1x, dirY = p2y - p1y;
+            double len = Math.hypot(dirX, dirY);
+            if (len == 0) continue;
+            double unitX = dirX / len, unitY = dirY / len;
+            double normalX = -unitY, normalY = unitX;
+            // center of bar slightly before junction along lane direction
+            double cx = p2x - unitX * BAR_BACK;
+            double cy = p2y - unitY * BAR_BACK;
+            // bar endpoints across lane using normal
+            double hx = normalX * (BAR_LENGTH / 2.0);
+            double hy = normalY * (BAR_LENGTH / 2.0);
+            bars[4 * i] = cx - hx;
+            bars[4 * i + 1] = cy - hy;
+            bars[4 * i + 2] = cx + hx;
+            bars[4 * i + 3] = cy + hy;
         }
-        return null;
+        return bars;
     }
 
     public void fitAndCenter() {
         if (model == null) return;
         viewManager.resetView();
+        requestRender();
     }
 
     public void zoomAtCenter(double factor) {
         viewManager.zoomcenter(factor);
-        render();
+        requestRender();
     }
 }
\ No newline at end of file
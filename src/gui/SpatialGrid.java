@@ -0,0 +1,101 @@
+package gui;
+
+import java.util.Arrays;
+
+/*
+ * Uniform grid over axis-aligned boxes in world coordinates.
+ * Items are numbered 0..n-1 by the caller and inserted into every cell their box touches; the cells are
+ * stored as one packed array (cellStart/cellItems), so a query only walks the cells under the viewport.
+ * Built once and read on the FX thread only, query results are written into a reused array.
+ */
+class SpatialGrid {
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+
+    private final double minX, minY, maxX, maxY;
+    private final double cellSize;
+    private final int cols, rows;
+    private final int[] cellStart; // items of cell c are cellItems[cellStart[c] .. cellStart[c + 1])
+    private final int[] cellItems;
+    private final int[] marks; // query stamp per item, so an item in several cells is reported once
+    private int stamp = 0;
+    private int[] results = new int[256];
+
+    // boxes holds minX, minY, maxX, maxY for each of the count items
+    SpatialGrid(double[] boxes, int count) {
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            x0 = Math.min(x0, boxes[4 * i]);
+            y0 = Math.min(y0, boxes[4 * i + 1]);
+            x1 = Math.max(x1, boxes[4 * i + 2]);
+            y1 = Math.max(y1, boxes[4 * i + 3]);
+        }
+        if (count == 0) {x0 = y0 = 0; x1 = y1 = 1;}
+        double w = Math.max(x1 - x0, 1e-6), h = Math.max(y1 - y0, 1e-6);
+        // about one item per cell, but never more than MAX_CELLS_PER_AXIS cells per side
+        double size = Math.sqrt(w * h / Math.max(1, count));
+        size = Math.max(size, Math.max(w, h) / MAX_CELLS_PER_AXIS);
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+        cellSize = size;
+        cols = Math.max(1, (int) Math.ceil(w / size));
+        rows = Math.max(1, (int) Math.ceil(h / size));
+
+        // count, prefix sum, fill
+        cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < count; i++) {
+            int cx0 = col(boxes[4 * i]), cy0 = row(boxes[4 * i + 1]);
+            int cx1 = col(boxes[4 * i + 2]), cy1 = row(boxes[4 * i + 3]);
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) cellStart[cy * cols + cx + 1]++;
+            }
+        }
+        for (int c = 0; c < cols * rows; c++) cellStart[c + 1] += cellStart[c];
+        cellItems = new int[cellStart[cols * rows]];
+        int[] fill = Arrays.copyOf(cellStart, cols * rows);
+        for (int i = 0; i < count; i++) {
+            int cx0 = col(boxes[4 * i]), cy0 = row(boxes[4 * i + 1]);
+            int cx1 = col(boxes[4 * i + 2]), cy1 = row(boxes[4 * i + 3]);
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) cellItems[fill[cy * cols + cx]++] = i;
+            }
+        }
+        marks = new int[count];
+    }
+
+    private int col(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) ((x - minX) / cellSize)));
+    }
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
+
+    // items whose cells touch the rectangle, in ascending item order; returns how many were written to results()
+    int query(double qMinX, double qMinY, double qMaxX, double qMaxY) {
+        if (marks.length == 0 || qMaxX < minX || qMaxY < minY || qMinX > maxX || qMinY > maxY) return 0;
+        if (++stamp == 0) { // wrapped around, forget old marks
+            Arrays.fill(marks, 0);
+            stamp = 1;
+        }
+        int n = 0;
+        int cx0 = col(qMinX), cy0 = row(qMinY), cx1 = col(qMaxX), cy1 = row(qMaxY);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * cols + cx;
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int item = cellItems[k];
+                    if (marks[item] == stamp) continue;
+                    marks[item] = stamp;
+                    if (n == results.length) results = Arrays.copyOf(results, n * 2);
+                    results[n++] = item;
+                }
+            }
+        }
+        Arrays.sort(results, 0, n); // keep the original drawing order
+        return n;
+    }
+
+    int[] results() {return results;}
+}
@@ -47,11 +47,12 @@ public class View {
                 // Fallback: compute from geometry
                 for (paser.Networkpaser.Edge e : network.edges) {
                     for (paser.Networkpaser.Lane l : e.lanes) {
-                        for (javafx.geometry.Point2D p : l.shapePoints) {
-                            if (p.getX() < minX) minX = p.getX();
-                            if (p.getY() < minY) minY = p.getY();
-                            if (p.getX() > maxX) maxX = p.getX();
-                            if (p.getY() > maxY) maxY = p.getY();
+                        for (int i = 0; i < l.pointCount(); i++) {
+                            double x = l.x(i), y = l.y(i);
+                            if (x < minX) minX = x;
+                            if (y < minY) minY = y;
+                            if (x > maxX) maxX = x;
+                            if (y > maxY) maxY = y;
                         }
                     }
                 }
@@ -0,0 +1,298 @@
+package paser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import paser.Networkpaser.Edge;
+import paser.Networkpaser.Geometry;
+import paser.Networkpaser.Junction;
+import paser.Networkpaser.Lane;
+import paser.Networkpaser.NetworkModel;
+
+/*
+Compiled binary copy of a net.xml, written next to it as <net.xml>.cache on the first load.
+Layout (big endian):
+    header      magic, version, source size, source mtime, source hash, bounds, table counts
+    strings     offsets (int, count + 1) then the UTF-8 bytes of every id/type
+    junctions   id, x, y, type, shapeOffset, shapeCount
+    edges       id, from, to, first lane, lane count
+    lanes       id, index, speed, length, width, shapeOffset, shapeCount
+    geometry    origin x/y then float x/y pairs, same as Networkpaser.Geometry
+The file is read through a memory-mapped FileChannel, so viewers of the same network share the page cache,
+and the geometry stays in the mapping until the first shape point is asked for.
+The source hash is CRC32C over the first and last HASH_BLOCK bytes, cheap enough to check on every start.
+*/
+public class NetworkCache {
+    private static final int MAGIC = 0x534E4331; // "SNC1"
+    private static final int VERSION = 1;
+    private static final int HASH_BLOCK = 1 << 20;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 * 8 + 5 * 4;
+    private static final int JUNCTION_SIZE = 4 + 8 + 8 + 4 + 4 + 4;
+    private static final int EDGE_SIZE = 4 + 4 + 4 + 4 + 4;
+    private static final int LANE_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 4;
+
+    // cache file used for a net.xml
+    public static File cacheFile(String path) {
+        return new File(path + ".cache");
+    }
+
+    // load from the cache if it matches the net.xml, otherwise parse it and write a new cache
+    public static NetworkModel load(String path) throws Exception {
+        File xmlFile = new File(path);
+        if (!xmlFile.exists()) {
+            throw new IOException("File not found: " + path);
+        }
+        File cache = cacheFile(path);
+        if (cache.exists()) {
+            try {
+                NetworkModel model = read(cache, xmlFile);
+                if (model != null) return model;
+            } catch (Exception e) {
+                System.out.println("Network cache unreadable, parsing " + path + " again: " + e.getMessage());
+            }
+        }
+        NetworkModel model = Networkpaser.parseStreaming(path);
+        try {
+            write(model, xmlFile, cache);
+        } catch (Exception e) {
+            System.out.println("Unable to write network cache " + cache + ": " + e.getMessage());
+        }
+        return model;
+    }
+
+    //=================READ================================
+    // null when the cache belongs to another version of the net.xml
+    static NetworkModel read(File cache, File xmlFile) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // stays valid after close
+        }
+        if (buf.capacity() < HEADER_SIZE || buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+        long size = buf.getLong();
+        long mtime = buf.getLong();
+        long hash = buf.getLong();
+        if (size != xmlFile.length() || mtime != xmlFile.lastModified() || hash != sourceHash(xmlFile)) return null;
+
+        double minX = buf.getDouble(), maxX = buf.getDouble(), minY = buf.getDouble(), maxY = buf.getDouble();
+        int stringCount = buf.getInt();
+        int junctionCount = buf.getInt();
+        int edgeCount = buf.getInt();
+        int laneCount = buf.getInt();
+        int pointCount = buf.getInt();
+
+        // string table
+        String[] strings = new String[stringCount];
+        int[] offsets = new int[stringCount + 1];
+        for (int i = 0; i <= stringCount; i++) offsets[i] = buf.getInt();
+        int base = buf.position();
+        byte[] bytes = new byte[offsets[stringCount]];
+        buf.get(bytes);
+        for (int i = 0; i < stringCount; i++) {
+            strings[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+
+        // geometry sits behind the tables, only its position is needed here
+        int junctionStart = base + bytes.length;
+        int edgeStart = junctionStart + junctionCount * JUNCTION_SIZE;
+        int laneStart = edgeStart + edgeCount * EDGE_SIZE;
+        int geometryStart = laneStart + laneCount * LANE_SIZE;
+        double originX = buf.getDouble(geometryStart);
+        double originY = buf.getDouble(geometryStart + 8);
+        FloatBuffer points = buf.slice(geometryStart + 16, pointCount * 8).asFloatBuffer();
+        Geometry geometry = new Geometry(points, pointCount, originX, originY);
+
+        List<Junction> junctions = new ArrayList<>(junctionCount);
+        buf.position(junctionStart);
+        for (int i = 0; i < junctionCount; i++) {
+            String id = str(strings, buf.getInt());
+            double x = buf.getDouble();
+            double y = buf.getDouble();
+            String type = str(strings, buf.getInt());
+            int offset = buf.getInt();
+            int count = buf.getInt();
+            junctions.add(new Junction(id, x, y, type, geometry, offset, count));
+        }
+
+        Lane[] lanes = new Lane[laneCount];
+        buf.position(laneStart);
+        for (int i = 0; i < laneCount; i++) {
+            String id = str(strings, buf.getInt());
+            int index = buf.getInt();
+            double speed = buf.getDouble();
+            double length = buf.getDouble();
+            double width = buf.getDouble();
+            int offset = buf.getInt();
+            int count = buf.getInt();
+            lanes[i] = new Lane(id, index, speed, length, width, geometry, offset, count);
+        }
+
+        List<Edge> edges = new ArrayList<>(edgeCount);
+        buf.position(edgeStart);
+        for (int i = 0; i < edgeCount; i++) {
+            String id = str(strings, buf.getInt());
+            String from = str(strings, buf.getInt());
+            String to = str(strings, buf.getInt());
+            int firstLane = buf.getInt();
+            int count = buf.getInt();
+            List<Lane> edgeLanes = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) edgeLanes.add(lanes[firstLane + j]);
+            edges.add(new Edge(id, from, to, edgeLanes));
+        }
+        return new NetworkModel(edges, junctions, geometry, minX, maxX, minY, maxY);
+    }
+
+    private static String str(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    //=================WRITE================================
+    // write the model to cache through a temporary file, so a reader never maps a half-written cache
+    static void write(NetworkModel model, File xmlFile, File cache) throws IOException {
+        Map<String, Integer> stringIndex = new LinkedHashMap<>();
+        int laneCount = 0;
+        for (Junction j : model.junctions) {
+            intern(stringIndex, j.id);
+            intern(stringIndex, j.type);
+        }
+        for (Edge e : model.edges) {
+            intern(stringIndex, e.id);
+            intern(stringIndex, e.from);
+            intern(stringIndex, e.to);
+            for (Lane l : e.lanes) intern(stringIndex, l.id);
+            laneCount += e.lanes.size();
+        }
+        List<byte[]> encoded = new ArrayList<>(stringIndex.size());
+        int stringBytes = 0;
+        for (String s : stringIndex.keySet()) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(b);
+            stringBytes += b.length;
+        }
+        Geometry geometry = model.geometry;
+        int pointCount = geometry.size();
+
+        long total = HEADER_SIZE + 4L * (encoded.size() + 1) + stringBytes
+                + (long) model.junctions.size() * JUNCTION_SIZE + (long) model.edges.size() * EDGE_SIZE
+                + (long) laneCount * LANE_SIZE + 16 + 8L * pointCount;
+        if (total > Integer.MAX_VALUE) throw new IOException("network too large for the cache format");
+
+        Path tmp = new File(cache.getPath() + "." + ProcessHandle.current().pid() + ".tmp").toPath();
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                Output out = new Output(ch);
+                out.room(HEADER_SIZE).putInt(MAGIC).putInt(VERSION)
+                        .putLong(xmlFile.length()).putLong(xmlFile.lastModified()).putLong(sourceHash(xmlFile))
+                        .putDouble(model.minX).putDouble(model.maxX).putDouble(model.minY).putDouble(model.maxY)
+                        .putInt(encoded.size()).putInt(model.junctions.size()).putInt(model.edges.size()).putInt(laneCount).putInt(pointCount);
+
+                int offset = 0;
+                for (byte[] b : encoded) {
+                    out.room(4).putInt(offset);
+                    offset += b.length;
+                }
+                out.room(4).putInt(offset);
+                for (byte[] b : encoded) out.put(b);
+
+                for (Junction j : model.junctions) {
+                    out.room(JUNCTION_SIZE).putInt(index(stringIndex, j.id)).putDouble(j.x).putDouble(j.y).putInt(index(stringIndex, j.type))
+                            .putInt(j.shapeOffset).putInt(j.shapeCount);
+                }
+                int firstLane = 0;
+                for (Edge e : model.edges) {
+                    out.room(EDGE_SIZE).putInt(index(stringIndex, e.id)).putInt(index(stringIndex, e.from)).putInt(index(stringIndex, e.to))
+                            .putInt(firstLane).putInt(e.lanes.size());
+                    firstLane += e.lanes.size();
+                }
+                for (Edge e : model.edges) {
+                    for (Lane l : e.lanes) {
+                        out.room(LANE_SIZE).putInt(index(stringIndex, l.id)).putInt(l.index)
+                                .putDouble(l.speed).putDouble(l.length).putDouble(l.width)
+                                .putInt(l.shapeOffset).putInt(l.shapeCount);
+                    }
+                }
+                geometry.writeTo(out);
+                out.flush();
+            }
+            Files.move(tmp, cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // fixed-size buffer in front of the cache file, so writing needs no memory in proportion to the network
+    static class Output {
+        private static final int SIZE = 1 << 20;
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(SIZE);
+
+        Output(FileChannel ch) {
+            this.ch = ch;
+        }
+        // the buffer with at least bytes (<= SIZE) free, written out first if needed
+        ByteBuffer room(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+            return buf;
+        }
+        // any length, larger arrays go through in pieces
+        void put(byte[] b) throws IOException {
+            int done = 0;
+            while (done < b.length) {
+                int n = Math.min(b.length - done, room(1).remaining());
+                buf.put(b, done, n);
+                done += n;
+            }
+        }
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+    }
+
+    private static void intern(Map<String, Integer> stringIndex, String s) {
+        if (s != null) stringIndex.putIfAbsent(s, stringIndex.size());
+    }
+
+    private static int index(Map<String, Integer> stringIndex, String s) {
+        return s == null ? -1 : stringIndex.get(s);
+    }
+
+    // CRC32C over the first and the last HASH_BLOCK bytes of the file
+    static long sourceHash(File file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer block = ByteBuffer.allocate((int) Math.min(size, HASH_BLOCK));
+            readFully(ch, block, 0);
+            crc.update(block.flip());
+            if (size > HASH_BLOCK) {
+                block.clear();
+                readFully(ch, block, Math.max(HASH_BLOCK, size - HASH_BLOCK));
+                crc.update(block.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer block, long position) throws IOException {
+        while (block.hasRemaining()) {
+            int n = ch.read(block, position);
+            if (n < 0) break;
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package paser;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import paser.Networkpaser.Edge;
+import paser.Networkpaser.Junction;
+import paser.Networkpaser.Lane;
+import paser.Networkpaser.NetworkModel;
+
+/*
+Checks for NetworkCache, like MainTest run by hand: java paser.NetworkCacheTest [net.xml]
+Parses the network, writes the cache, maps it back and compares every field and shape point with the
+parsed model; then changes the mtime, the size and the content (same size and mtime) of the net.xml and
+expects each cache to be rejected. Works on a copy in a temporary directory.
+*/
+public class NetworkCacheTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        String source = args.length > 0 ? args[0] : "../resource/test_2.net.xml";
+        Path dir = Files.createTempDirectory("netcache");
+        File xml = dir.resolve("net.xml").toFile();
+        File cache = NetworkCache.cacheFile(xml.getPath());
+        try {
+            Files.copy(Path.of(source), xml.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            byte[] original = Files.readAllBytes(xml.toPath());
+            long mtime = xml.lastModified();
+
+            // round trip
+            NetworkModel parsed = Networkpaser.parseStreaming(xml.getPath());
+            NetworkCache.write(parsed, xml, cache);
+            NetworkModel mapped = NetworkCache.read(cache, xml);
+            check(mapped != null, "fresh cache is accepted");
+            if (mapped != null) compare(parsed, mapped);
+            NetworkModel loaded = NetworkCache.load(xml.getPath());
+            check(loaded.edges.size() == parsed.edges.size(), "load() uses the cache");
+
+            // mtime changed
+            check(xml.setLastModified(mtime + 2000), "mtime can be changed");
+            check(NetworkCache.read(cache, xml) == null, "cache rejected after mtime change");
+            restore(xml, original, mtime);
+            check(NetworkCache.read(cache, xml) != null, "cache accepted again after restore");
+
+            // size changed, same mtime
+            byte[] longer = new byte[original.length + 1];
+            System.arraycopy(original, 0, longer, 0, original.length);
+            longer[original.length] = '\n';
+            restore(xml, longer, mtime);
+            check(NetworkCache.read(cache, xml) == null, "cache rejected after size change");
+
+            // content changed, same size and mtime: only the CRC can tell
+            byte[] edited = original.clone();
+            int at = new String(original, StandardCharsets.ISO_8859_1).indexOf("shape=\"") + 7;
+            edited[at] = (byte) (edited[at] == '1' ? '2' : '1'); // still a valid coordinate
+            restore(xml, edited, mtime);
+            check(NetworkCache.read(cache, xml) == null, "cache rejected after content change");
+
+            // load() replaces a stale cache
+            NetworkModel reparsed = NetworkCache.load(xml.getPath());
+            check(reparsed != null && NetworkCache.read(cache, xml) != null, "load() rewrites a stale cache");
+        } finally {
+            Files.deleteIfExists(cache.toPath());
+            Files.deleteIfExists(xml.toPath());
+            Files.deleteIfExists(dir);
+        }
+        if (failures > 0) {
+            System.out.println("NetworkCacheTest: " + failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("NetworkCacheTest: all checks passed");
+    }
+
+    private static void compare(NetworkModel a, NetworkModel b) {
+        check(a.minX == b.minX && a.maxX == b.maxX && a.minY == b.minY && a.maxY == b.maxY, "bounds");
+        check(a.junctions.size() == b.junctions.size(), "junction count");
+        for (int i = 0; i < Math.min(a.junctions.size(), b.junctions.size()); i++) {
+            Junction x = a.junctions.get(i), y = b.junctions.get(i);
+            boolean same = x.id.equals(y.id) && x.x == y.x && x.y == y.y && equal(x.type, y.type) && x.shapeCount == y.shapeCount;
+            for (int k = 0; same && k < x.shapeCount; k++) {
+                same = x.geometry.x(x.shapeOffset + k) == y.geometry.x(y.shapeOffset + k)
+                        && x.geometry.y(x.shapeOffset + k) == y.geometry.y(y.shapeOffset + k);
+            }
+            check(same, "junction " + x.id);
+        }
+        check(a.edges.size() == b.edges.size(), "edge count");
+        for (int i = 0; i < Math.min(a.edges.size(), b.edges.size()); i++) {
+            Edge x = a.edges.get(i), y = b.edges.get(i);
+            boolean same = x.id.equals(y.id) && equal(x.from, y.from) && equal(x.to, y.to) && x.lanes.size() == y.lanes.size();
+            for (int l = 0; same && l < x.lanes.size(); l++) {
+                Lane p = x.lanes.get(l), q = y.lanes.get(l);
+                same = p.id.equals(q.id) && p.index == q.index && p.speed == q.speed && p.length == q.length
+                        && p.width == q.width && p.shapeCount == q.shapeCount;
+                for (int k = 0; same && k < p.shapeCount; k++) {
+                    same = p.geometry.x(p.shapeOffset + k) == q.geometry.x(q.shapeOffset + k)
+                            && p.geometry.y(p.shapeOffset + k) == q.geometry.y(q.shapeOffset + k);
+                }
+            }
+            check(same, "edge " + x.id);
+        }
+    }
+
+    private static void restore(File xml, byte[] content, long mtime) throws Exception {
+        Files.write(xml.toPath(), content);
+        xml.setLastModified(mtime);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAIL " + what);
+        }
+    }
+}
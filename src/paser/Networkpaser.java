@@ -1,7 +1,9 @@
 package paser;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.w3c.dom.Document;
@@ -9,8 +11,15 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import javafx.geometry.Point2D;
 import java.io.File;
+import java.util.Arrays;
+import java.nio.FloatBuffer;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 
 
@@ -21,27 +30,128 @@ public class Networkpaser {
     First we need to build 3 class for the network
     */
 
+    /*
+    All shape points of the network packed in one coordinate array (x0, y0, x1, y1, ...).
+    A lane or junction only keeps the offset and count of its points, so there is no object per point
+    and render loops walk one contiguous array. Points are stored as floats relative to the first point,
+    which keeps millimetre precision over tens of kilometres at 8 bytes per point.
+    */
+    public static class Geometry {
+        private volatile float[] coords = new float[1024]; // null until a mapped geometry is decoded
+        private int pointCount = 0;
+        private double originX, originY;
+        private FloatBuffer source; // not yet decoded points of a NetworkCache mapping
+
+        public Geometry() {}
+
+        // geometry backed by a mapped cache file, copied out on the first access
+        Geometry(FloatBuffer source, int pointCount, double originX, double originY) {
+            this.coords = null;
+            this.source = source;
+            this.pointCount = pointCount;
+            this.originX = originX;
+            this.originY = originY;
+        }
+
+        public int size() { return pointCount; }
+        public double x(int point) { return originX + coords()[2 * point]; }
+        public double y(int point) { return originY + coords()[2 * point + 1]; }
+
+        private float[] coords() {
+            float[] c = coords;
+            return c != null ? c : decode();
+        }
+
+        private synchronized float[] decode() {
+            if (coords == null) {
+                float[] c = new float[2 * pointCount];
+                source.get(0, c);
+                source = null;
+                coords = c;
+            }
+            return coords;
+        }
+
+        // origin followed by the packed points, the layout NetworkCache maps back
+        void writeTo(NetworkCache.Output out) throws IOException {
+            float[] c = coords();
+            out.room(16).putDouble(originX).putDouble(originY);
+            for (int i = 0; i < 2 * pointCount; i++) out.room(4).putFloat(c[i]);
+        }
+
+        // append the points of a SUMO shape string ("x,y x,y ..."), returns how many were added
+        int addShape(String shape) {
+            if (shape == null || shape.isEmpty()) return 0;
+            int added = 0;
+            int len = shape.length();
+            int start = 0;
+            while (start < len) {
+                while (start < len && shape.charAt(start) == ' ') start++;
+                int end = start;
+                while (end < len && shape.charAt(end) != ' ') end++;
+                if (end > start && addPoint(shape, start, end)) added++;
+                start = end;
+            }
+            return added;
+        }
+
+        // one "x,y" token, skipped if it is invalid (same as the old Point2D parser)
+        private boolean addPoint(String shape, int start, int end) {
+            int comma = shape.indexOf(',', start);
+            if (comma < 0 || comma >= end) return false;
+            int second = shape.indexOf(',', comma + 1);
+            if (second >= 0 && second < end) return false;
+            try {
+                double x = Double.parseDouble(shape.substring(start, comma));
+                double y = Double.parseDouble(shape.substring(comma + 1, end));
+                if (pointCount == 0) {
+                    originX = x;
+                    originY = y;
+                }
+                if (2 * pointCount + 2 > coords.length) coords = Arrays.copyOf(coords, coords.length * 2);
+                coords[2 * pointCount] = (float) (x - originX);
+                coords[2 * pointCount + 1] = (float) (y - originY);
+                pointCount++;
+                return true;
+            } catch (NumberFormatException e) {
+                // Skip invalid coordinate
+                return false;
+            }
+        }
+
+        // drop the unused capacity once parsing is done
+        void trim() {
+            coords = Arrays.copyOf(coords, 2 * pointCount);
+        }
+    }
+
     //class Junction
     public static class Junction {
         public String id;
         public double x;
         public double y;
         public String type;
-        public String shape;
-        public List<Point2D> shapePoints = new ArrayList<>();
+        public Geometry geometry; // shared by the whole network
+        public int shapeOffset; // first point of the shape in geometry
+        public int shapeCount; // number of shape points
 
         // Constructor đầy đủ
-        public Junction(String id, double x, double y, String type, String shape) {
+        public Junction(String id, double x, double y, String type, Geometry geometry, int shapeOffset, int shapeCount) {
             this.id = id;
             this.x = x;
             this.y = y;
             this.type = type;
-            this.shape = shape;
-            this.shapePoints = parseShape(shape);
+            this.geometry = geometry;
+            this.shapeOffset = shapeOffset;
+            this.shapeCount = shapeCount;
         }
 
         // Constructor mặc định
         public Junction() {}
+
+        public int pointCount() { return shapeCount; }
+        public double x(int i) { return geometry.x(shapeOffset + i); }
+        public double y(int i) { return geometry.y(shapeOffset + i); }
     }
 
     
@@ -52,20 +162,28 @@ public class Networkpaser {
         public double speed;
         public double length;
         public double width;
-        public List<Point2D> shapePoints = new ArrayList<>();// the list of the point(take it in shape in lane(xml file)) <point2D>
+        public Geometry geometry; // shared by the whole network
+        public int shapeOffset; // first point of the shape in geometry
+        public int shapeCount; // number of shape points (take it in shape in lane(xml file))
 
         // Constructor đầy đủ
-        public Lane(String id, int index, double speed, double length, double width, List<Point2D> shapePoints) {
+        public Lane(String id, int index, double speed, double length, double width, Geometry geometry, int shapeOffset, int shapeCount) {
             this.id = id;
             this.index = index;
             this.speed = speed;
             this.length = length;
             this.width = width;
-            if (shapePoints != null) this.shapePoints = shapePoints; else this.shapePoints = new ArrayList<>();
+            this.geometry = geometry;
+            this.shapeOffset = shapeOffset;
+            this.shapeCount = shapeCount;
         }
 
         // Constructor mặc định
         public Lane() {}
+
+        public int pointCount() { return shapeCount; }
+        public double x(int i) { return geometry.x(shapeOffset + i); }
+        public double y(int i) { return geometry.y(shapeOffset + i); }
     }
 
     //class edge
@@ -91,44 +209,66 @@ public class Networkpaser {
     public static class NetworkModel {
         public List<Edge> edges;
         public List<Junction> junctions;
+        public Geometry geometry; // shape points of every lane and junction
         public double minX, maxX, minY, maxY;
+        // id lookups, built once in the constructor
+        public Map<String, Lane> laneIndex = new HashMap<>();
+        public Map<String, Edge> edgeIndex = new HashMap<>();
+        public Map<String, Junction> junctionIndex = new HashMap<>();
 
 
         // Constructor đầy đủ
-        public NetworkModel(List<Edge> edges, List<Junction> junctions, double minX, double maxX, double minY, double maxY) {
+        public NetworkModel(List<Edge> edges, List<Junction> junctions, Geometry geometry, double minX, double maxX, double minY, double maxY) {
             this.edges = edges;
             this.junctions = junctions;
+            this.geometry = geometry;
             this.minX = minX;
             this.maxX = maxX;
             this.minY = minY;
             this.maxY = maxY;
+            buildIndexes();
         }
 
         // Constructor mặc định
         public NetworkModel() {}
-    }
 
-    // Parse shape string into list of Point2D
-    private static List<Point2D> parseShape(String shape) {
-        List<Point2D> points = new ArrayList<>();
-        if (shape == null || shape.isEmpty()) return points;
-        String[] coords = shape.trim().split(" ");
-        for (String coord : coords) {
-            String[] xy = coord.split(",");
-            if (xy.length != 2) continue;
-            try {
-                double x = Double.parseDouble(xy[0]);
-                double y = Double.parseDouble(xy[1]);
-                points.add(new Point2D(x, y));
-            } catch (NumberFormatException e) {
-                // Skip invalid coordinate
+        // (re)build the id lookups from edges and junctions, first occurrence wins like a linear search
+        public void buildIndexes() {
+            laneIndex = new HashMap<>();
+            edgeIndex = new HashMap<>();
+            junctionIndex = new HashMap<>();
+            if (edges != null) {
+                for (Edge e : edges) {
+                    edgeIndex.putIfAbsent(e.id, e);
+                    for (Lane l : e.lanes) laneIndex.putIfAbsent(l.id, l);
+                }
+            }
+            if (junctions != null) {
+                for (Junction j : junctions) junctionIndex.putIfAbsent(j.id, j);
             }
         }
-        return points;
+
+        public Lane getLane(String id) { return id == null ? null : laneIndex.get(id); }
+        public Edge getEdge(String id) { return id == null ? null : edgeIndex.get(id); }
+        public Junction getJunction(String id) { return id == null ? null : junctionIndex.get(id); }
     }
-    
 
+    // load through the binary cache next to the net.xml, see NetworkCache
+    public static NetworkModel load(String path) throws Exception {
+        return NetworkCache.load(path);
+    }
+
+    // parse with the streaming reader (default), see parse(path, streaming)
     public static NetworkModel parse(String path) throws Exception {
+        return parse(path, true);
+    }
+
+    // streaming = true reads the file in one pass with StAX, false builds the whole DOM first (old path)
+    public static NetworkModel parse(String path, boolean streaming) throws Exception {
+        return streaming ? parseStreaming(path) : parseDom(path);
+    }
+
+    public static NetworkModel parseDom(String path) throws Exception {
         File xmlFile = new File(path);
         if (!xmlFile.exists()) {
             throw new IOException("File not found: " + path);
@@ -142,6 +282,7 @@ public class Networkpaser {
         // Parse junctions
         NodeList junctionNodes = doc.getElementsByTagName("junction");
         List<Junction> junctions = new ArrayList<>();
+        Geometry geometry = new Geometry();
         double minX = Double.MAX_VALUE, maxX = Double.MIN_VALUE, minY = Double.MAX_VALUE, maxY = Double.MIN_VALUE;
 
         for (int i = 0; i < junctionNodes.getLength(); i++) {
@@ -152,9 +293,10 @@ public class Networkpaser {
                 double x = safeParseDouble(elem.getAttribute("x"), 0.0);
                 double y = safeParseDouble(elem.getAttribute("y"), 0.0);
                 String type = elem.getAttribute("type");
-                String shape = elem.getAttribute("shape");
+                int offset = geometry.size();
+                int count = geometry.addShape(elem.getAttribute("shape"));
 
-                Junction junction = new Junction(id, x, y, type, shape);
+                Junction junction = new Junction(id, x, y, type, geometry, offset, count);
                 junctions.add(junction);
 
                 // Update bounds
@@ -188,10 +330,10 @@ public class Networkpaser {
                         double speed = safeParseDouble(laneElem.getAttribute("speed"), 0.0);
                         double length = safeParseDouble(laneElem.getAttribute("length"), 0.0);
                         double width = safeParseDouble(laneElem.getAttribute("width"), 3.0);
-                        String shape = laneElem.getAttribute("shape");
-                        List<Point2D> shapePoints = parseShape(shape);
+                        int offset = geometry.size();
+                        int count = geometry.addShape(laneElem.getAttribute("shape"));
 
-                        lanes.add( new Lane(laneId, index, speed, length, width, shapePoints));
+                        lanes.add( new Lane(laneId, index, speed, length, width, geometry, offset, count));
                     }
                 }
                 //Only add edges if it has lanes
@@ -201,7 +343,95 @@ public class Networkpaser {
                 }
             }
         }
-        return new NetworkModel(edges, junctions, minX, maxX, minY, maxY);
+        geometry.trim();
+        return new NetworkModel(edges, junctions, geometry, minX, maxX, minY, maxY);
+    }
+
+    /*
+    Single pass over the file with a StAX cursor: only the junction/edge/lane start tags are looked at,
+    everything else (connections, tlLogic, requests...) is skipped without building any nodes.
+    Produces the same model as parseDom: junctions and edges in document order, edges without lanes dropped.
+    */
+    public static NetworkModel parseStreaming(String path) throws Exception {
+        File xmlFile = new File(path);
+        if (!xmlFile.exists()) {
+            throw new IOException("File not found: " + path);
+        }
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+
+        List<Junction> junctions = new ArrayList<>();
+        List<Edge> edges = new ArrayList<>();
+        Geometry geometry = new Geometry();
+        double minX = Double.MAX_VALUE, maxX = Double.MIN_VALUE, minY = Double.MAX_VALUE, maxY = Double.MIN_VALUE;
+
+        Edge currentEdge = null; // edge whose lanes are being read
+        int edgeDepth = 0; // element depth of currentEdge
+        int depth = 0;
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(xmlFile), 1 << 16)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String name = reader.getLocalName();
+                        if (name.equals("junction")) {
+                            String id = attr(reader, "id");
+                            double x = safeParseDouble(attr(reader, "x"), 0.0);
+                            double y = safeParseDouble(attr(reader, "y"), 0.0);
+                            int offset = geometry.size();
+                            int count = geometry.addShape(attr(reader, "shape"));
+                            junctions.add(new Junction(id, x, y, attr(reader, "type"), geometry, offset, count));
+
+                            // Update bounds
+                            if (x < minX) minX = x;
+                            if (x > maxX) maxX = x;
+                            if (y < minY) minY = y;
+                            if (y > maxY) maxY = y;
+                        }
+                        else if (name.equals("edge")) {
+                            currentEdge = new Edge(attr(reader, "id"), attr(reader, "from"), attr(reader, "to"), new ArrayList<>());
+                            edgeDepth = depth;
+                        }
+                        else if (name.equals("lane") && currentEdge != null) {
+                            int j = currentEdge.lanes.size();
+                            String laneId = attr(reader, "id");
+                            int index = safeParseInt(attr(reader, "index"), j);
+                            double speed = safeParseDouble(attr(reader, "speed"), 0.0);
+                            double length = safeParseDouble(attr(reader, "length"), 0.0);
+                            double width = safeParseDouble(attr(reader, "width"), 3.0);
+                            int offset = geometry.size();
+                            int count = geometry.addShape(attr(reader, "shape"));
+
+                            currentEdge.lanes.add(new Lane(laneId, index, speed, length, width, geometry, offset, count));
+                        }
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (currentEdge != null && depth == edgeDepth) {
+                            //Only add edges if it has lanes
+                            if (!currentEdge.lanes.isEmpty()) {edges.add(currentEdge);}
+                            currentEdge = null;
+                        }
+                        depth--;
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        geometry.trim();
+        return new NetworkModel(edges, junctions, geometry, minX, maxX, minY, maxY);
+    }
+
+    // attribute value like Element.getAttribute: "" when missing
+    private static String attr(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
     }
 
     private static double safeParseDouble(String s, double def) {
@@ -0,0 +1,64 @@
+package wrapper;
+
+import java.util.Arrays;
+
+/*
+ * Edge indices grouped by score into BUCKETS equal ranges of 0..1, in no order within a bucket. Insert, move
+ * and remove are O(1) through a position table; the largest scores are found by walking down from the
+ * highest non-empty bucket. Holds the hotspot candidates below the top K of HotspotDetector.
+ */
+class EdgeBuckets {
+    static final int BUCKETS = 256;
+    private final int[][] edges = new int[BUCKETS][];
+    private final int[] sizes = new int[BUCKETS];
+    private final int[] bucket; // bucket per edge, -1 if absent
+    private final int[] slot; // index in its bucket per edge
+    private int size = 0;
+    private int highest = -1; // no edge in a bucket above this one, it may be empty itself
+
+    EdgeBuckets(int edgeCount) {
+        bucket = new int[edgeCount];
+        Arrays.fill(bucket, -1);
+        slot = new int[edgeCount];
+    }
+    //=================GETTER================================
+    int size() {return size;}
+    boolean contains(int e) {return bucket[e] >= 0;}
+    // scores of bucket b are below upperBound(b), the last bucket also holds 1
+    static int bucketOf(double s) {return Math.max(0, Math.min(BUCKETS - 1, (int)(s * BUCKETS)));}
+    static double upperBound(int b) {return (b + 1) / (double)BUCKETS;}
+    // highest non-empty bucket, -1 if there is none
+    int highest() {
+        while (highest >= 0 && sizes[highest] == 0) {highest--;}
+        return highest;
+    }
+    int bucketSize(int b) {return sizes[b];}
+    // i-th edge of bucket b, i < bucketSize(b)
+    int get(int b, int i) {return edges[b][i];}
+    //=================SETTER================================
+    void insert(int e, double s) {
+        int b = bucketOf(s);
+        int[] list = edges[b];
+        if (list == null) {list = edges[b] = new int[16];}
+        else if (sizes[b] == list.length) {list = edges[b] = Arrays.copyOf(list, sizes[b] * 2);}
+        list[sizes[b]] = e;
+        slot[e] = sizes[b]++;
+        bucket[e] = b;
+        size++;
+        if (b > highest) {highest = b;}
+    }
+    void update(int e, double s) {
+        if (bucketOf(s) == bucket[e]) {return;}
+        remove(e);
+        insert(e, s);
+    }
+    void remove(int e) {
+        int b = bucket[e];
+        int i = slot[e];
+        int last = edges[b][--sizes[b]];
+        edges[b][i] = last; // the last edge of the bucket fills the gap
+        slot[last] = i;
+        bucket[e] = -1;
+        size--;
+    }
+}
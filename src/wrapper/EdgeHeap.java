@@ -0,0 +1,83 @@
+package wrapper;
+
+import java.util.Arrays;
+
+/*
+ * Binary min-heap of edge indices with a position table, so the key of any edge can be changed or the
+ * edge removed in O(log size). Used by HotspotDetector, a max-heap is this heap with negated keys.
+ */
+class EdgeHeap {
+    private int[] heap = new int[16];
+    private int size = 0;
+    private final int[] pos; // index in heap per edge, -1 if absent
+    private final double[] key;
+
+    EdgeHeap(int edgeCount) {
+        pos = new int[edgeCount];
+        Arrays.fill(pos, -1);
+        key = new double[edgeCount];
+    }
+    //=================GETTER================================
+    int size() {return size;}
+    boolean contains(int e) {return pos[e] >= 0;}
+    // edge with the smallest key, size() must be > 0
+    int peek() {return heap[0];}
+    double peekKey() {return key[heap[0]];}
+    // i-th edge in heap order (not sorted), for copying the content
+    int get(int i) {return heap[i];}
+    //=================SETTER================================
+    void insert(int e, double k) {
+        if (size == heap.length) {heap = Arrays.copyOf(heap, size * 2);}
+        key[e] = k;
+        heap[size] = e;
+        pos[e] = size;
+        siftUp(size++);
+    }
+    void update(int e, double k) {
+        double old = key[e];
+        key[e] = k;
+        if (k < old) {siftUp(pos[e]);}
+        else {siftDown(pos[e]);}
+    }
+    void remove(int e) {
+        int i = pos[e];
+        int last = heap[--size];
+        pos[e] = -1;
+        if (i == size) {return;}
+        heap[i] = last;
+        pos[last] = i;
+        siftUp(i);
+        siftDown(pos[last]);
+    }
+    int poll() {
+        int e = heap[0];
+        remove(e);
+        return e;
+    }
+    private void siftUp(int i) {
+        int e = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (key[heap[parent]] <= key[e]) {break;}
+            heap[i] = heap[parent];
+            pos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = e;
+        pos[e] = i;
+    }
+    private void siftDown(int i) {
+        int e = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {break;}
+            if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) {child++;}
+            if (key[heap[child]] >= key[e]) {break;}
+            heap[i] = heap[child];
+            pos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = e;
+        pos[e] = i;
+    }
+}
@@ -0,0 +1,102 @@
+package wrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+Checks for EdgeHeap, like MainTest run by hand: java wrapper.EdgeHeapTest
+Random inserts, key decreases and increases, removes and polls are mirrored in a plain key array; after every
+operation the heap's smallest key has to be the reference minimum, and draining it has to give the keys
+sorted. The same runs with negated keys check the max-heap use.
+*/
+public class EdgeHeapTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        Random rnd = new Random(11);
+        for (int run = 0; run < 200; run++) {
+            int n = 1 + rnd.nextInt(300);
+            boolean ties = run % 4 == 0; // few distinct keys
+            check(run(rnd, n, false, ties), "min-heap run " + run);
+            check(run(rnd, n, true, ties), "max-heap (negated keys) run " + run);
+        }
+        if (failures > 0) {
+            System.out.println("EdgeHeapTest: " + failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("EdgeHeapTest: all checks passed");
+    }
+
+    // max = keys are stored negated and the largest value has to come out first
+    private static boolean run(Random rnd, int n, boolean max, boolean ties) {
+        EdgeHeap heap = new EdgeHeap(n);
+        double[] value = new double[n]; // reference, NaN = not in the heap
+        Arrays.fill(value, Double.NaN);
+        double sign = max ? -1 : 1;
+        for (int op = 0; op < 20 * n; op++) {
+            int e = rnd.nextInt(n);
+            double v = ties ? rnd.nextInt(4) : rnd.nextDouble() * 100;
+            int kind = rnd.nextInt(10);
+            if (!heap.contains(e)) {
+                if (kind < 7) {
+                    heap.insert(e, sign * v);
+                    value[e] = v;
+                } else if (heap.size() > 0) { // poll instead
+                    double expected = best(value, max);
+                    int polled = heap.poll();
+                    if (value[polled] != expected) {return false;}
+                    value[polled] = Double.NaN;
+                }
+            } else if (kind < 3) { // decrease the value
+                v = value[e] - Math.abs(v);
+                heap.update(e, sign * v);
+                value[e] = v;
+            } else if (kind < 6) { // increase the value
+                v = value[e] + Math.abs(v);
+                heap.update(e, sign * v);
+                value[e] = v;
+            } else if (kind < 8) {
+                heap.remove(e);
+                value[e] = Double.NaN;
+            } else {
+                heap.update(e, sign * value[e]); // same key
+            }
+            if (heap.contains(e) == Double.isNaN(value[e])) {return false;}
+            if (heap.size() != count(value)) {return false;}
+            if (heap.size() > 0 && sign * heap.peekKey() != best(value, max)) {return false;}
+            if (heap.size() > 0 && value[heap.peek()] != best(value, max)) {return false;}
+        }
+        // draining gives every remaining value in order
+        List<Double> expected = new ArrayList<>();
+        for (double v : value) {if (!Double.isNaN(v)) {expected.add(v);}}
+        expected.sort(max ? (a, b) -> Double.compare(b, a) : Double::compare);
+        for (double v : expected) {
+            if (heap.size() == 0 || value[heap.poll()] != v) {return false;}
+        }
+        return heap.size() == 0;
+    }
+
+    private static double best(double[] value, boolean max) {
+        double best = Double.NaN;
+        for (double v : value) {
+            if (Double.isNaN(v)) {continue;}
+            if (Double.isNaN(best) || (max ? v > best : v < best)) {best = v;}
+        }
+        return best;
+    }
+
+    private static int count(double[] value) {
+        int n = 0;
+        for (double v : value) {if (!Double.isNaN(v)) {n++;}}
+        return n;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAIL " + what);
+        }
+    }
+}
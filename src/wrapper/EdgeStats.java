@@ -0,0 +1,236 @@
+package wrapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import paser.Networkpaser;
+
+/*
+ * Per-edge density, mean speed and occupancy, kept incrementally from vehicle updates.
+ * Every edge of the parsed network has an index into parallel primitive arrays. A vehicle entering or
+ * leaving an edge, or changing its speed, touches only that edge: its running sums are first integrated
+ * over the time they were valid, then adjusted. At the end of each window the integrals are turned into
+ * window means in one pass over the edges and published as an EdgeStatsSnapshot, so readers never scan
+ * vehicles. The same integrals feed the optional HotspotDetector, for the edges touched in a step only.
+ * Owned by the Sumo-Stepper thread.
+ */
+class EdgeStats {
+    private final HashMap<String, Integer> edgeIndex = new HashMap<>();
+    private final String[] edgeIDs;
+    private final double[] edgeLength; // meters, of the first lane
+    private final int[] laneCount;
+    // live state per edge
+    private final int[] count;
+    private final double[] speedSum;
+    private final double[] lengthSum; // vehicle lengths, for occupancy
+    // integrals over the current window, valid up to lastTime
+    private final double[] vehSeconds;
+    private final double[] speedSeconds;
+    private final double[] lengthSeconds;
+    private final double[] lastTime;
+    // per vehicle slot of VehicleStore
+    private int[] slotEdge = new int[0];
+    private double[] slotSpeed = new double[0];
+    private double[] slotLength = new double[0];
+    // edges touched in the current step, handed to the hotspot detector in finishStep
+    private final int[] dirty;
+    private final boolean[] isDirty;
+    private int dirtyCount = 0;
+    private HotspotDetector hotspots;
+    private double windowLength;
+    private double windowStart = 0;
+    private long windowCount = 0;
+    private EdgeStatsSnapshot last = EdgeStatsSnapshot.EMPTY;
+
+    EdgeStats(Networkpaser.NetworkModel model, double windowLength) {
+        List<Networkpaser.Edge> edges = model.edges;
+        int n = edges.size();
+        edgeIDs = new String[n];
+        edgeLength = new double[n];
+        laneCount = new int[n];
+        for (int e = 0; e < n; e++) {
+            Networkpaser.Edge edge = edges.get(e);
+            edgeIDs[e] = edge.id;
+            edgeIndex.put(edge.id, e);
+            laneCount[e] = Math.max(1, edge.lanes.size());
+            edgeLength[e] = edge.lanes.isEmpty() ? 0 : edge.lanes.get(0).length;
+        }
+        count = new int[n];
+        speedSum = new double[n];
+        lengthSum = new double[n];
+        vehSeconds = new double[n];
+        speedSeconds = new double[n];
+        lengthSeconds = new double[n];
+        lastTime = new double[n];
+        dirty = new int[n];
+        isDirty = new boolean[n];
+        this.windowLength = windowLength;
+    }
+    //=================GETTER================================
+    // last completed window
+    EdgeStatsSnapshot last() {return last;}
+    // vehicles on the edge right now, -1 for an unknown edge
+    int liveCount(String edgeID) {
+        Integer e = edgeIndex.get(edgeID);
+        return e == null ? -1 : count[e];
+    }
+    // worst edges of the hotspot window, empty without a detector
+    List<Hotspot> hotspots() {return hotspots == null ? List.of() : hotspots.hotspots();}
+    //=================VEHICLE UPDATES=======================
+    // the vehicle in slot is on edgeID from time t on (null or an unknown id = off the network)
+    void setEdge(int slot, String edgeID, double t) {
+        ensureSlot(slot);
+        Integer e = edgeID == null ? null : edgeIndex.get(edgeID);
+        moveTo(slot, e == null ? -1 : e, t);
+    }
+    void setSpeed(int slot, double speed, double t) {
+        ensureSlot(slot);
+        int e = slotEdge[slot];
+        if (e >= 0 && speed != slotSpeed[slot]) {
+            integrate(e, t);
+            speedSum[e] += speed - slotSpeed[slot];
+            markDirty(e);
+        }
+        slotSpeed[slot] = speed;
+    }
+    void setLength(int slot, double length, double t) {
+        ensureSlot(slot);
+        int e = slotEdge[slot];
+        if (e >= 0) {
+            integrate(e, t);
+            lengthSum[e] += length - slotLength[slot];
+            markDirty(e);
+        }
+        slotLength[slot] = length;
+    }
+    // the vehicle arrived, the slot may be reused afterwards
+    void remove(int slot, double t) {
+        if (slot >= slotEdge.length) {return;}
+        moveTo(slot, -1, t);
+        slotSpeed[slot] = 0;
+        slotLength[slot] = 0;
+    }
+    private void moveTo(int slot, int e, double t) {
+        int old = slotEdge[slot];
+        if (old == e) {return;}
+        if (old >= 0) {
+            integrate(old, t);
+            if (--count[old] == 0) {speedSum[old] = 0; lengthSum[old] = 0;} // no rounding drift on empty edges
+            else {
+                speedSum[old] -= slotSpeed[slot];
+                lengthSum[old] -= slotLength[slot];
+            }
+            markDirty(old);
+        }
+        if (e >= 0) {
+            integrate(e, t);
+            count[e]++;
+            speedSum[e] += slotSpeed[slot];
+            lengthSum[e] += slotLength[slot];
+            markDirty(e);
+        }
+        slotEdge[slot] = e;
+    }
+    // account the live state of edge e from lastTime up to t
+    private void integrate(int e, double t) {
+        double dt = t - lastTime[e];
+        if (dt <= 0) {return;}
+        if (hotspots != null) {hotspots.accumulate(e, lastTime[e], t, count[e], speedSum[e], lengthSum[e]);}
+        vehSeconds[e] += count[e] * dt;
+        speedSeconds[e] += speedSum[e] * dt;
+        lengthSeconds[e] += lengthSum[e] * dt;
+        lastTime[e] = t;
+    }
+    private void markDirty(int e) {
+        if (isDirty[e]) {return;}
+        isDirty[e] = true;
+        dirty[dirtyCount++] = e;
+    }
+    private void ensureSlot(int slot) {
+        if (slot < slotEdge.length) {return;}
+        int old = slotEdge.length;
+        int capacity = Math.max(slot + 1, Math.max(256, old * 2));
+        slotEdge = Arrays.copyOf(slotEdge, capacity);
+        Arrays.fill(slotEdge, old, capacity, -1);
+        slotSpeed = Arrays.copyOf(slotSpeed, capacity);
+        slotLength = Arrays.copyOf(slotLength, capacity);
+    }
+    //=================HOTSPOTS==============================
+    // detect hotspots over buckets * bucketSeconds of simulation time, keeping the k worst edges
+    void setHotspotDetector(HotspotDetector detector) {
+        hotspots = detector;
+    }
+    // end of a step at time t: rescore the edges touched in it (all recently changed ones when a hotspot
+    // bucket ended). Returns true if the hotspot list changed
+    boolean finishStep(double t) {
+        if (hotspots == null) {
+            for (int i = 0; i < dirtyCount; i++) {isDirty[dirty[i]] = false;}
+            dirtyCount = 0;
+            return false;
+        }
+        long bucket = hotspots.bucketOf(t);
+        boolean newBucket = bucket != hotspots.currentBucket();
+        hotspots.startBucket(bucket);
+        for (int i = 0; i < dirtyCount; i++) {
+            int e = dirty[i];
+            isDirty[e] = false;
+            hotspots.markChanged(e, t);
+            if (!newBucket) {
+                integrate(e, t);
+                hotspots.rescore(e, t);
+            }
+        }
+        dirtyCount = 0;
+        if (newBucket) { // the window of every recently changed edge moved
+            for (int i = 0; i < hotspots.activeCount(); i++) {
+                int e = hotspots.active(i);
+                integrate(e, t);
+                hotspots.rescore(e, t);
+            }
+        }
+        return hotspots.publish();
+    }
+    //=================WINDOWS===============================
+    // close every window that ended at or before simulation time t; call before the updates of that step
+    // returns true if a new EdgeStatsSnapshot was published
+    boolean advanceTo(double t) {
+        boolean rolled = false;
+        while (t >= windowStart + windowLength) {
+            roll(windowStart + windowLength);
+            rolled = true;
+        }
+        return rolled;
+    }
+    // window length in simulated seconds, takes effect with the next window
+    void setWindowLength(double seconds) {
+        windowLength = Math.max(1, seconds);
+    }
+    private void roll(double end) {
+        int n = edgeIDs.length;
+        double span = end - windowStart;
+        double[] meanVehicles = new double[n];
+        double[] density = new double[n];
+        double[] meanSpeed = new double[n];
+        double[] occupancy = new double[n];
+        double totalVehSeconds = 0;
+        double totalSpeedSeconds = 0;
+        for (int e = 0; e < n; e++) {
+            integrate(e, end);
+            meanVehicles[e] = vehSeconds[e] / span;
+            density[e] = edgeLength[e] > 0 ? meanVehicles[e] / (edgeLength[e] / 1000.0) : 0;
+            meanSpeed[e] = vehSeconds[e] > 0 ? speedSeconds[e] / vehSeconds[e] : -1;
+            occupancy[e] = edgeLength[e] > 0 ? Math.min(1, lengthSeconds[e] / (span * edgeLength[e] * laneCount[e])) : 0;
+            totalVehSeconds += vehSeconds[e];
+            totalSpeedSeconds += speedSeconds[e];
+            vehSeconds[e] = 0;
+            speedSeconds[e] = 0;
+            lengthSeconds[e] = 0;
+        }
+        windowCount++;
+        last = new EdgeStatsSnapshot(windowCount, windowStart, end, edgeIDs, edgeIndex,
+                meanVehicles, density, meanSpeed, occupancy,
+                totalVehSeconds / span, totalVehSeconds > 0 ? totalSpeedSeconds / totalVehSeconds : -1);
+        windowStart = end;
+    }
+}
@@ -0,0 +1,64 @@
+package wrapper;
+
+import java.util.Map;
+
+/*
+ * Per-edge statistics of one completed time window, produced by EdgeStats.
+ * Values are time means over the window: an edge with two vehicles for half of the window has
+ * getMeanVehicles() == 1. Immutable, so the FX thread and report writers read it without locks.
+ */
+public final class EdgeStatsSnapshot {
+    static final EdgeStatsSnapshot EMPTY = new EdgeStatsSnapshot(0, 0, 0, new String[0], Map.of(),
+            new double[0], new double[0], new double[0], new double[0], 0, -1);
+
+    private final long version;
+    private final double windowStart; // simulation seconds
+    private final double windowEnd;
+    // edges, index i describes the same edge in every column; ids and index are shared between windows
+    private final String[] edgeIDs;
+    private final Map<String, Integer> edgeIndex;
+    private final double[] meanVehicles;
+    private final double[] density; // vehicles per km
+    private final double[] meanSpeed; // m/s, -1 if no vehicle used the edge
+    private final double[] occupancy; // 0..1, vehicle length over edge length of all lanes
+    private final double networkVehicles;
+    private final double networkMeanSpeed;
+
+    EdgeStatsSnapshot(long version, double windowStart, double windowEnd, String[] edgeIDs, Map<String, Integer> edgeIndex,
+                      double[] meanVehicles, double[] density, double[] meanSpeed, double[] occupancy,
+                      double networkVehicles, double networkMeanSpeed) {
+        this.version = version;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.edgeIDs = edgeIDs;
+        this.edgeIndex = edgeIndex;
+        this.meanVehicles = meanVehicles;
+        this.density = density;
+        this.meanSpeed = meanSpeed;
+        this.occupancy = occupancy;
+        this.networkVehicles = networkVehicles;
+        this.networkMeanSpeed = networkMeanSpeed;
+    }
+//===== GENERAL ===========================================
+    // increases by one for every completed window, 0 before the first one
+    public long getVersion() {return version;}
+    public double getWindowStart() {return windowStart;}
+    public double getWindowEnd() {return windowEnd;}
+//===== NETWORK ===========================================
+    // mean number of vehicles on the network during the window
+    public double getNetworkVehicles() {return networkVehicles;}
+    // mean speed over all vehicle-seconds of the window, m/s, -1 if there were none
+    public double getNetworkMeanSpeed() {return networkMeanSpeed;}
+//===== EDGE ==============================================
+    public int getEdgeCount() {return edgeIDs.length;}
+    public String getEdgeID(int i) {return edgeIDs[i];}
+    // index of an edge, -1 if it is not in the network
+    public int indexOfEdge(String inputID) {
+        Integer i = edgeIndex.get(inputID);
+        return i == null ? -1 : i;
+    }
+    public double getMeanVehicles(int i) {return meanVehicles[i];}
+    public double getDensity(int i) {return density[i];}
+    public double getMeanSpeed(int i) {return meanSpeed[i];}
+    public double getOccupancy(int i) {return occupancy[i];}
+}
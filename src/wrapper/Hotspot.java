@@ -0,0 +1,4 @@
+package wrapper;
+
+// one congested edge: score = (1 - speedRatio) * occupancy over the hotspot window, 0..1
+public record Hotspot(String edgeID, double score, double speedRatio, double occupancy) {}
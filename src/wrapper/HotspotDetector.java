@@ -0,0 +1,243 @@
+package wrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import paser.Networkpaser;
+
+/*
+ * Congestion hotspots over a sliding window of simulation time.
+ * Each edge has a ring of `buckets` buckets of bucketSeconds each, holding the vehicle-seconds, speed-seconds
+ * and length-seconds EdgeStats integrated into it; the ring sums give the window means. An edge is only
+ * rescored when it changed in the current step, or when a bucket boundary passed while it changed within
+ * the last window - edges that stayed the same for a whole window keep their score.
+ * The K worst edges sit in a min-heap of size K (the weakest of them on top), every other edge with a score
+ * is a candidate in EdgeBuckets, unordered buckets by score. A rescore costs O(log K) in the heap or O(1) in
+ * the buckets, plus one O(log K) swap when a candidate beats the weakest top edge. A top edge that gets
+ * better or leaves is not replaced right away: publish() refills the top once per step, walking down from the
+ * highest candidate bucket until the buckets lie below the K-th score. A refill costs O(BUCKETS) bucket heads,
+ * O(log K) per edge that moves up, and one pass over the single bucket holding the K-th score; so a step
+ * costs O(changed edges * log K) amortised plus that refill, independent of the n edges of the network.
+ * Owned by the Sumo-Stepper thread, the result is published as an immutable list.
+ */
+class HotspotDetector {
+    private final String[] edgeIDs;
+    private final double[] allowedSpeed; // m/s, fastest lane of the edge
+    private final double[] laneMeters; // length of all lanes together
+    private final boolean[] internal; // junction internal edges are never hotspots
+    private final double bucketSeconds;
+    private final int buckets;
+    private final int k;
+    // rings, bucket b of edge e at [e * buckets + b % buckets]
+    private final double[] ringVeh;
+    private final double[] ringSpeed;
+    private final double[] ringLength;
+    private final long[] head; // newest bucket written per edge
+    private final double[] windowVeh;
+    private final double[] windowSpeed;
+    private final double[] windowLength;
+    // last score per edge
+    private final double[] score;
+    private final double[] speedRatio;
+    private final double[] occupancy;
+    // edges that changed within the last window, rescored on every bucket boundary
+    private int[] active = new int[64];
+    private int activeCount = 0;
+    private final boolean[] isActive;
+    private final long[] lastChange; // bucket of the last change per edge
+    private final EdgeHeap top; // the k worst, min-heap on score
+    private final EdgeBuckets candidates; // all others with a score
+    private boolean refill = false; // a top edge got better or left, candidates may have to move up
+    private int[] scratch = new int[16]; // one candidate bucket, copied while the refill moves its edges
+    private long currentBucket = Long.MIN_VALUE;
+    private boolean topChanged = false;
+    private List<Hotspot> published = List.of();
+
+    HotspotDetector(Networkpaser.NetworkModel model, double bucketSeconds, int buckets, int k) {
+        int n = model.edges.size();
+        edgeIDs = new String[n];
+        allowedSpeed = new double[n];
+        laneMeters = new double[n];
+        internal = new boolean[n];
+        for (int e = 0; e < n; e++) {
+            Networkpaser.Edge edge = model.edges.get(e);
+            edgeIDs[e] = edge.id;
+            internal[e] = edge.id.startsWith(":");
+            for (Networkpaser.Lane lane : edge.lanes) {
+                allowedSpeed[e] = Math.max(allowedSpeed[e], lane.speed);
+                laneMeters[e] += lane.length;
+            }
+        }
+        this.bucketSeconds = Math.max(0.1, bucketSeconds);
+        this.buckets = Math.max(1, buckets);
+        this.k = Math.max(1, k);
+        ringVeh = new double[n * this.buckets];
+        ringSpeed = new double[n * this.buckets];
+        ringLength = new double[n * this.buckets];
+        head = new long[n];
+        windowVeh = new double[n];
+        windowSpeed = new double[n];
+        windowLength = new double[n];
+        score = new double[n];
+        speedRatio = new double[n];
+        occupancy = new double[n];
+        isActive = new boolean[n];
+        lastChange = new long[n];
+        top = new EdgeHeap(n);
+        candidates = new EdgeBuckets(n);
+    }
+    //=================GETTER================================
+    long bucketOf(double t) {return (long)Math.floor(t / bucketSeconds);}
+    long currentBucket() {return currentBucket;}
+    int activeCount() {return activeCount;}
+    int active(int i) {return active[i];}
+    // worst edges first, at most k
+    List<Hotspot> hotspots() {return published;}
+    //=================ACCUMULATE============================
+    // edge e had count vehicles with these speed and length sums from t0 to t1 (called from EdgeStats.integrate)
+    void accumulate(int e, double t0, double t1, int count, double speedSum, double lengthSum) {
+        double window = buckets * bucketSeconds;
+        if (t1 - t0 > window) {t0 = t1 - window;} // anything older leaves the window anyway
+        if (count == 0) {
+            advance(e, bucketOf(t1));
+            return;
+        }
+        double t = t0;
+        while (t < t1) {
+            long b = bucketOf(t);
+            double end = Math.min(t1, (b + 1) * bucketSeconds);
+            advance(e, b);
+            int slot = e * buckets + (int)(b % buckets);
+            double dt = end - t;
+            ringVeh[slot] += count * dt;
+            ringSpeed[slot] += speedSum * dt;
+            ringLength[slot] += lengthSum * dt;
+            windowVeh[e] += count * dt;
+            windowSpeed[e] += speedSum * dt;
+            windowLength[e] += lengthSum * dt;
+            t = end;
+        }
+    }
+    // move the ring of edge e forward to bucket b, emptying the buckets that fall out of the window
+    private void advance(int e, long b) {
+        long h = head[e];
+        if (b <= h) {return;}
+        long from = Math.max(h + 1, b - buckets + 1);
+        for (long i = from; i <= b; i++) {
+            int slot = e * buckets + (int)(i % buckets);
+            windowVeh[e] -= ringVeh[slot];
+            windowSpeed[e] -= ringSpeed[slot];
+            windowLength[e] -= ringLength[slot];
+            ringVeh[slot] = 0;
+            ringSpeed[slot] = 0;
+            ringLength[slot] = 0;
+        }
+        if (windowVeh[e] < 1e-9) {windowVeh[e] = windowSpeed[e] = windowLength[e] = 0;} // rounding left-overs
+        head[e] = b;
+    }
+    //=================SCORE=================================
+    // edge e changed in the bucket of time t
+    void markChanged(int e, double t) {
+        lastChange[e] = bucketOf(t);
+        if (isActive[e]) {return;}
+        if (activeCount == active.length) {active = Arrays.copyOf(active, activeCount * 2);}
+        active[activeCount++] = e;
+        isActive[e] = true;
+    }
+    // recompute the score of e at time t, its ring must already be integrated up to t
+    void rescore(int e, double t) {
+        long b = bucketOf(t);
+        advance(e, b);
+        double span = (buckets - 1) * bucketSeconds + (t - b * bucketSeconds); // covered by the ring
+        double s = 0;
+        if (windowVeh[e] > 0 && span > 0 && !internal[e]) {
+            double meanSpeed = windowSpeed[e] / windowVeh[e];
+            speedRatio[e] = allowedSpeed[e] > 0 ? Math.min(1, Math.max(0, meanSpeed / allowedSpeed[e])) : 1;
+            occupancy[e] = laneMeters[e] > 0 ? Math.min(1, windowLength[e] / (span * laneMeters[e])) : 0;
+            s = (1 - speedRatio[e]) * occupancy[e];
+        } else {
+            speedRatio[e] = 1;
+            occupancy[e] = 0;
+        }
+        place(e, s);
+    }
+    // start of a new step at bucket b; edges unchanged for a whole window are dropped from the active list
+    void startBucket(long b) {
+        if (b == currentBucket) {return;}
+        currentBucket = b;
+        int n = 0;
+        for (int i = 0; i < activeCount; i++) {
+            int e = active[i];
+            if (lastChange[e] > b - buckets - 1) {active[n++] = e;} // its window still moves
+            else {isActive[e] = false;}
+        }
+        activeCount = n;
+    }
+    // give edge e score s and keep it in the top or among the candidates (package-private for the checks)
+    void place(int e, double s) {
+        double old = score[e];
+        score[e] = s;
+        if (top.contains(e)) {
+            if (s <= 0) {top.remove(e);}
+            else {top.update(e, s);}
+            if (s < old && candidates.size() > 0) {refill = true;} // a candidate may be worse now
+            topChanged = true;
+            return;
+        }
+        boolean candidate = candidates.contains(e);
+        if (s <= 0) {
+            if (candidate) {candidates.remove(e);}
+        }
+        else if (top.size() < k || s > top.peekKey()) {
+            if (candidate) {candidates.remove(e);}
+            if (top.size() == k) { // the weakest top edge becomes a candidate
+                int down = top.poll();
+                candidates.insert(down, score[down]);
+            }
+            top.insert(e, s);
+            topChanged = true;
+        }
+        else if (candidate) {candidates.update(e, s);}
+        else {candidates.insert(e, s);}
+    }
+    // move candidates up until no candidate scores above a top edge: fill free places, then swap with the
+    // weakest top edge; buckets whose range lies below the K-th score cannot hold a better edge
+    private void refill() {
+        refill = false;
+        for (int b = candidates.highest(); b >= 0; b--) {
+            int n = candidates.bucketSize(b);
+            if (n == 0) {continue;}
+            if (top.size() == k && EdgeBuckets.upperBound(b) <= top.peekKey()) {break;}
+            if (scratch.length < n) {scratch = new int[Math.max(n, scratch.length * 2)];}
+            for (int i = 0; i < n; i++) {scratch[i] = candidates.get(b, i);}
+            for (int i = 0; i < n; i++) {
+                int e = scratch[i];
+                if (top.size() == k) {
+                    if (EdgeBuckets.upperBound(b) <= top.peekKey()) {break;} // the rest of the bucket can't beat it
+                    if (score[e] <= top.peekKey()) {continue;}
+                    int down = top.poll();
+                    candidates.insert(down, score[down]); // into this bucket or a lower one
+                }
+                candidates.remove(e);
+                top.insert(e, score[e]);
+                topChanged = true;
+            }
+        }
+    }
+    // build the published list if the top changed since the last call, returns true if it did
+    boolean publish() {
+        if (refill) {refill();}
+        if (!topChanged) {return false;}
+        topChanged = false;
+        List<Hotspot> list = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            int e = top.get(i);
+            list.add(new Hotspot(edgeIDs[e], score[e], speedRatio[e], occupancy[e]));
+        }
+        list.sort((a, b) -> Double.compare(b.score(), a.score()));
+        published = Collections.unmodifiableList(list);
+        return true;
+    }
+}
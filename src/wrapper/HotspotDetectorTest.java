@@ -0,0 +1,82 @@
+package wrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import paser.Networkpaser;
+
+/*
+Checks for the top K of HotspotDetector, like MainTest run by hand: java wrapper.HotspotDetectorTest
+Random score changes (spread out, crowded into one candidate bucket, with ties, and edges dropping to 0) are
+placed into the detector; after every step the published hotspots have to be the K best scores of a plain
+array sorted as reference.
+*/
+public class HotspotDetectorTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        Random rnd = new Random(3);
+        run(rnd, 500, 10, "spread", () -> rnd.nextDouble());
+        run(rnd, 500, 10, "crowded", () -> 0.5 + rnd.nextDouble() / EdgeBuckets.BUCKETS); // one bucket
+        run(rnd, 500, 10, "ties", () -> rnd.nextInt(5) / 4.0);
+        run(rnd, 50, 40, "k near n", () -> rnd.nextDouble());
+        run(rnd, 2000, 1, "k = 1", () -> rnd.nextDouble() * rnd.nextDouble());
+        if (failures > 0) {
+            System.out.println("HotspotDetectorTest: " + failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("HotspotDetectorTest: all checks passed");
+    }
+
+    interface Scores {double next();}
+
+    private static void run(Random rnd, int n, int k, String name, Scores scores) {
+        HotspotDetector detector = new HotspotDetector(network(n), 10, 6, k);
+        double[] reference = new double[n];
+        int bad = 0;
+        for (int step = 0; step < 300; step++) {
+            int changes = 1 + rnd.nextInt(n / 5 + 1);
+            for (int c = 0; c < changes; c++) {
+                int e = rnd.nextInt(n);
+                double s = rnd.nextDouble() < 0.2 ? 0 : scores.next(); // some edges clear up
+                reference[e] = s;
+                detector.place(e, s);
+            }
+            detector.publish();
+            if (!matches(detector.hotspots(), reference, k)) {bad++;}
+        }
+        check(bad == 0, name + ": published top differs from the reference in " + bad + " of 300 steps");
+    }
+
+    // same scores as the k best positive reference scores, worst first, and every edge with its own score
+    private static boolean matches(List<Hotspot> published, double[] reference, int k) {
+        double[] sorted = Arrays.stream(reference).filter(s -> s > 0).map(s -> -s).sorted().map(s -> -s).toArray();
+        int expected = Math.min(k, sorted.length);
+        if (published.size() != expected) {return false;}
+        for (int i = 0; i < expected; i++) {
+            Hotspot h = published.get(i);
+            int e = Integer.parseInt(h.edgeID().substring(1));
+            if (h.score() != sorted[i] || reference[e] != h.score()) {return false;}
+        }
+        return true;
+    }
+
+    // n plain edges "e0".."e<n-1>" with one lane each
+    private static Networkpaser.NetworkModel network(int n) {
+        List<Networkpaser.Edge> edges = new ArrayList<>(n);
+        for (int e = 0; e < n; e++) {
+            Networkpaser.Lane lane = new Networkpaser.Lane("e" + e + "_0", 0, 13.9, 100, 3.2, null, 0, 0);
+            edges.add(new Networkpaser.Edge("e" + e, "a", "b", List.of(lane)));
+        }
+        return new Networkpaser.NetworkModel(edges, List.of(), null, 0, 0, 0, 0);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAIL " + what);
+        }
+    }
+}
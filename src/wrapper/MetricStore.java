@@ -0,0 +1,207 @@
+package wrapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Time series of simulation metrics in fixed-size ring buffers.
+ * Every series keeps the raw samples plus 10 s and 1 min means, each level in its own ring of CAPACITY
+ * primitive slots, so memory stays constant however long the simulation runs: the raw ring covers the
+ * recent past, the coarser rings go back further. query() picks the finest level that still covers the
+ * requested range and thins it to maxPoints with largest-triangle-three-buckets, so a chart costs
+ * O(points it can show) instead of O(samples).
+ * Recorded by the Sumo-Stepper thread and read by the FX thread; the series lock only guards array copies.
+ */
+public class MetricStore {
+    public static final String VEHICLES = "vehicles";
+    public static final String MEAN_SPEED = "meanSpeed"; // m/s
+    static final int CAPACITY = 4096;
+    static final double[] RESOLUTIONS = {0, 10, 60}; // seconds per slot, 0 = raw
+
+    private final Map<String, Series> series = new LinkedHashMap<>();
+
+    // sorted sample times and values of a query
+    public record Points(double[] t, double[] v) {
+        public int size() {return t.length;}
+    }
+
+    //=================RECORD================================
+    // add a sample at simulation time t, times of one series must not decrease
+    public void record(String name, double t, double value) {
+        Series s;
+        synchronized (series) {s = series.computeIfAbsent(name, k -> new Series());}
+        s.record(t, value);
+    }
+    //=================QUERY=================================
+    public String[] getSeriesNames() {
+        synchronized (series) {return series.keySet().toArray(new String[0]);}
+    }
+    // time of the first and the last sample, NaN for an unknown or empty series
+    public double getFirstTime(String name) {
+        Series s = get(name);
+        return s == null ? Double.NaN : s.firstTime();
+    }
+    public double getLastTime(String name) {
+        Series s = get(name);
+        return s == null ? Double.NaN : s.lastTime();
+    }
+    // samples between from and to, at most maxPoints (>= 3) of them
+    public Points query(String name, double from, double to, int maxPoints) {
+        Series s = get(name);
+        if (s == null) {return new Points(new double[0], new double[0]);}
+        Points p = s.range(from, to);
+        return downsample(p.t(), p.v(), Math.max(3, maxPoints));
+    }
+    private Series get(String name) {
+        synchronized (series) {return series.get(name);}
+    }
+    //=================DOWNSAMPLE============================
+    // largest-triangle-three-buckets: keeps first and last point and per bucket the point spanning the
+    // largest triangle with the previous pick and the mean of the next bucket, which keeps peaks visible
+    static Points downsample(double[] t, double[] v, int threshold) {
+        int n = t.length;
+        if (n <= threshold) {return new Points(t, v);}
+        double[] outT = new double[threshold];
+        double[] outV = new double[threshold];
+        double every = (double)(n - 2) / (threshold - 2);
+        int a = 0;
+        outT[0] = t[0];
+        outV[0] = v[0];
+        for (int i = 0; i < threshold - 2; i++) {
+            // mean of the next bucket
+            int nextStart = (int)Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min(n, (int)Math.floor((i + 2) * every) + 1);
+            double avgT = 0, avgV = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgT += t[j];
+                avgV += v[j];
+            }
+            int len = Math.max(1, nextEnd - nextStart);
+            avgT /= len;
+            avgV /= len;
+            // point of this bucket with the largest triangle
+            int start = (int)Math.floor(i * every) + 1;
+            int end = (int)Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int pick = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((t[a] - avgT) * (v[j] - v[a]) - (t[a] - t[j]) * (avgV - v[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    pick = j;
+                }
+            }
+            outT[i + 1] = t[pick];
+            outV[i + 1] = v[pick];
+            a = pick;
+        }
+        outT[threshold - 1] = t[n - 1];
+        outV[threshold - 1] = v[n - 1];
+        return new Points(outT, outV);
+    }
+
+    // one metric: a ring per resolution, the coarser ones filled with bucket means
+    private static class Series {
+        private final Ring[] levels = new Ring[RESOLUTIONS.length];
+
+        Series() {
+            for (int i = 0; i < levels.length; i++) {levels[i] = new Ring(RESOLUTIONS[i]);}
+        }
+        synchronized void record(double t, double value) {
+            for (Ring r : levels) {r.add(t, value);}
+        }
+        synchronized double firstTime() {
+            double first = Double.NaN;
+            for (Ring r : levels) { // coarse levels reach back furthest, but only to a bucket middle
+                if (r.count > 0 || r.pendingCount > 0) {first = Double.isNaN(first) ? r.oldest() : Math.min(first, r.oldest());}
+            }
+            return first;
+        }
+        synchronized double lastTime() {
+            return levels[0].count > 0 ? levels[0].newest() : Double.NaN;
+        }
+        // finest level whose oldest slot is not after from
+        synchronized Points range(double from, double to) {
+            Ring pick = levels[levels.length - 1];
+            for (Ring r : levels) {
+                if (r.count + (r.pendingCount > 0 ? 1 : 0) > 0 && r.oldest() <= from) {
+                    pick = r;
+                    break;
+                }
+            }
+            return pick.range(from, to);
+        }
+    }
+
+    // CAPACITY samples, the oldest is overwritten; with a resolution the samples of a bucket are averaged
+    private static class Ring {
+        final double resolution;
+        final double[] t = new double[CAPACITY];
+        final double[] v = new double[CAPACITY];
+        int start = 0; // oldest slot
+        int count = 0;
+        // bucket being averaged, not in the ring yet
+        long pendingBucket = Long.MIN_VALUE;
+        double pendingSum = 0;
+        int pendingCount = 0;
+
+        Ring(double resolution) {
+            this.resolution = resolution;
+        }
+        void add(double time, double value) {
+            if (resolution <= 0) {
+                push(time, value);
+                return;
+            }
+            long bucket = (long)Math.floor(time / resolution);
+            if (bucket != pendingBucket && pendingCount > 0) {
+                push((pendingBucket + 0.5) * resolution, pendingSum / pendingCount);
+                pendingSum = 0;
+                pendingCount = 0;
+            }
+            pendingBucket = bucket;
+            pendingSum += value;
+            pendingCount++;
+        }
+        private void push(double time, double value) {
+            int slot = (start + count) % CAPACITY;
+            t[slot] = time;
+            v[slot] = value;
+            if (count < CAPACITY) {count++;}
+            else {start = (start + 1) % CAPACITY;}
+        }
+        double oldest() {return count > 0 ? t[start] : (pendingBucket + 0.5) * resolution;}
+        double newest() {return t[(start + count - 1) % CAPACITY];}
+        // slots with from <= t <= to in time order, the open bucket included as its current mean
+        Points range(double from, double to) {
+            int lo = lowerBound(from);
+            int hi = lowerBound(Math.nextUp(to));
+            boolean pending = resolution > 0 && pendingCount > 0;
+            double pendingT = (pendingBucket + 0.5) * resolution;
+            boolean withPending = pending && pendingT >= from && pendingT <= to;
+            int n = hi - lo + (withPending ? 1 : 0);
+            double[] outT = new double[n];
+            double[] outV = new double[n];
+            for (int i = lo; i < hi; i++) {
+                int slot = (start + i) % CAPACITY;
+                outT[i - lo] = t[slot];
+                outV[i - lo] = v[slot];
+            }
+            if (withPending) {
+                outT[n - 1] = pendingT;
+                outV[n - 1] = pendingSum / pendingCount;
+            }
+            return new Points(outT, outV);
+        }
+        // first position (0..count) in time order with t >= time
+        private int lowerBound(double time) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (t[(start + mid) % CAPACITY] < time) {lo = mid + 1;}
+                else {hi = mid;}
+            }
+            return lo;
+        }
+    }
+}
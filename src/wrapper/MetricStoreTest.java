@@ -0,0 +1,120 @@
+package wrapper;
+
+/*
+Checks for MetricStore, like MainTest run by hand: java wrapper.MetricStoreTest
+Downsampling keeps small series as they are and thins long ones to the requested count with the first, last
+and peak points kept; queries pick the finest ring that covers the range, also across ring boundaries and
+after the raw, 10 s and 60 s rings have wrapped. Samples are recorded every second with value 2t + 1, so a
+10 s or 60 s mean at its bucket middle is exactly 2t and every returned point can be checked.
+*/
+public class MetricStoreTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        downsampling();
+        fewerPoints();
+        wrappedRings();
+        if (failures > 0) {
+            System.out.println("MetricStoreTest: " + failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("MetricStoreTest: all checks passed");
+    }
+
+    //===== DOWNSAMPLE ========================================
+    private static void downsampling() {
+        int n = 10_000;
+        double[] t = new double[n], v = new double[n];
+        for (int i = 0; i < n; i++) {
+            t[i] = i;
+            v[i] = Math.sin(i / 300.0);
+        }
+        v[4321] = 50; // a single spike has to survive
+        MetricStore.Points p = MetricStore.downsample(t, v, 500);
+        check(p.size() == 500, "thinned to the threshold");
+        check(p.t()[0] == 0 && p.t()[499] == n - 1, "first and last point kept");
+        boolean ordered = true, original = true, spike = false;
+        for (int i = 0; i < p.size(); i++) {
+            if (i > 0 && p.t()[i] <= p.t()[i - 1]) {ordered = false;}
+            int at = (int)p.t()[i];
+            if (at != p.t()[i] || v[at] != p.v()[i]) {original = false;}
+            if (p.v()[i] == 50) {spike = true;}
+        }
+        check(ordered, "thinned points in time order");
+        check(original, "thinned points are input points");
+        check(spike, "the spike is kept");
+    }
+
+    // a series shorter than maxPoints comes back complete
+    private static void fewerPoints() {
+        MetricStore.Points p = MetricStore.downsample(new double[]{1, 2, 3}, new double[]{4, 5, 6}, 10);
+        check(p.size() == 3 && p.t()[2] == 3 && p.v()[2] == 6, "downsample keeps a short series");
+        MetricStore store = new MetricStore();
+        for (int i = 0; i < 50; i++) {store.record("x", i, 2 * i + 1);}
+        p = store.query("x", 0, 49, 1000);
+        check(p.size() == 50 && rawValues(p), "query of 50 samples asking for 1000 gives all 50");
+        p = store.query("x", 10, 19, 1000);
+        check(p.size() == 10 && p.t()[0] == 10 && p.t()[9] == 19, "query inside the raw ring");
+        check(store.query("unknown", 0, 10, 100).size() == 0, "unknown series is empty");
+        check(store.query("x", 100, 200, 100).size() == 0, "range after the last sample is empty");
+    }
+
+    //===== RING WRAP =========================================
+    private static void wrappedRings() {
+        MetricStore store = new MetricStore();
+        int seconds = 200_000; // raw ring (4096 s) and 10 s ring (40960 s) wrap, the 60 s ring does not
+        for (int i = 0; i < seconds; i++) {store.record("x", i, 2 * i + 1);}
+        double last = seconds - 1;
+        check(store.getLastTime("x") == last, "last time");
+        check(store.getFirstTime("x") == 30, "first time is the middle of the first 60 s bucket");
+
+        // recent range: raw ring after it wrapped
+        MetricStore.Points p = store.query("x", last - 999, last, 5000);
+        check(p.size() == 1000 && p.t()[0] == last - 999 && rawValues(p), "raw ring after wrapping");
+
+        // starts before the raw ring: the 10 s ring, itself wrapped, with its open bucket at the end
+        double from = last - 20_000;
+        p = store.query("x", from, last, 5000);
+        check(p.size() >= 1999 && p.size() <= 2001, "range across the raw ring boundary comes from the 10 s ring (" + p.size() + ")");
+        check(p.t()[0] >= from && p.t()[p.size() - 1] <= last && steps(p, 10) && meanValues(p), "10 s means after wrapping");
+
+        // older than the 10 s ring reaches back: the 60 s ring
+        p = store.query("x", 1000, 2000, 5000);
+        check(p.size() == 16 && p.t()[0] == 1050 && steps(p, 60) && meanValues(p), "range before the 10 s ring comes from the 60 s ring");
+
+        // the whole series, thinned
+        p = store.query("x", store.getFirstTime("x"), last, 500);
+        check(p.size() == 500 && p.t()[0] == 30 && meanValues(p), "whole series from the 60 s ring, thinned to 500");
+    }
+
+    // raw samples: v = 2t + 1
+    private static boolean rawValues(MetricStore.Points p) {
+        for (int i = 0; i < p.size(); i++) {
+            if (p.v()[i] != 2 * p.t()[i] + 1) {return false;}
+        }
+        return true;
+    }
+
+    // means at the bucket middle: v = 2t (the open bucket only averages what it has so far, not checked)
+    private static boolean meanValues(MetricStore.Points p) {
+        for (int i = 0; i < p.size() - 1; i++) {
+            if (Math.abs(p.v()[i] - 2 * p.t()[i]) > 1e-6) {return false;}
+        }
+        return true;
+    }
+
+    // consecutive points one resolution apart
+    private static boolean steps(MetricStore.Points p, double resolution) {
+        for (int i = 1; i < p.size(); i++) {
+            if (p.t()[i] - p.t()[i - 1] != resolution) {return false;}
+        }
+        return true;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAIL " + what);
+        }
+    }
+}
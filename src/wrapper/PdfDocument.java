@@ -0,0 +1,192 @@
+package wrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/*
+ * Minimal PDF 1.4 writer for the simulation report: A4 pages with text in the standard Helvetica fonts,
+ * lines, rectangles and polylines, all in points with the origin at the bottom left corner.
+ * Page contents are kept as drawing operators and deflated when the file is written, charts stay vector
+ * graphics so nothing has to be rasterised. Text is WinAnsi, characters outside Latin-1 print as '?'.
+ * Not thread-safe, meant to be filled and written by one worker thread.
+ */
+class PdfDocument {
+    static final double PAGE_WIDTH = 595; // A4
+    static final double PAGE_HEIGHT = 842;
+    // Helvetica advance widths of the characters 32..126 in 1/1000 of the font size
+    private static final int[] WIDTHS = {
+            278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278,
+            556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556,
+            1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778,
+            667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556,
+            333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556,
+            556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584};
+
+    private final String title;
+    private final List<Page> pages = new ArrayList<>();
+
+    PdfDocument(String title) {
+        this.title = title;
+    }
+    //=================PAGES=================================
+    Page newPage() {
+        Page p = new Page();
+        pages.add(p);
+        return p;
+    }
+    int getPageCount() {return pages.size();}
+    Page getPage(int i) {return pages.get(i);}
+    // width of text in points, bold is treated like regular which is close enough for alignment
+    static double textWidth(String text, double size) {
+        int w = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            w += c >= 32 && c <= 126 ? WIDTHS[c - 32] : 556;
+        }
+        return w * size / 1000;
+    }
+
+    // drawing operators of one page
+    static class Page {
+        private final StringBuilder ops = new StringBuilder(4096);
+
+        //=================TEXT==================================
+        void text(double x, double y, double size, boolean bold, String text) {
+            ops.append("BT /").append(bold ? "F2 " : "F1 ");
+            num(size).append(" Tf ");
+            num(x).append(' ');
+            num(y).append(" Td (");
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '(' || c == ')' || c == '\\') {ops.append('\\').append(c);}
+                else if (c < 32 || c > 255) {ops.append('?');}
+                else {ops.append(c);}
+            }
+            ops.append(") Tj ET\n");
+        }
+        // text ending at x
+        void textRight(double x, double y, double size, boolean bold, String text) {
+            text(x - textWidth(text, size), y, size, bold, text);
+        }
+        void textCenter(double x, double y, double size, boolean bold, String text) {
+            text(x - textWidth(text, size) / 2, y, size, bold, text);
+        }
+        //=================GRAPHICS==============================
+        // colours 0..1 for strokes and fills from here on
+        void strokeColor(double r, double g, double b) {
+            num(r).append(' ');
+            num(g).append(' ');
+            num(b).append(" RG\n");
+        }
+        void fillColor(double r, double g, double b) {
+            num(r).append(' ');
+            num(g).append(' ');
+            num(b).append(" rg\n");
+        }
+        void lineWidth(double w) {
+            num(w).append(" w\n");
+        }
+        void line(double x1, double y1, double x2, double y2) {
+            num(x1).append(' ');
+            num(y1).append(" m ");
+            num(x2).append(' ');
+            num(y2).append(" l S\n");
+        }
+        void fillRect(double x, double y, double w, double h) {
+            rect(x, y, w, h).append(" f\n");
+        }
+        void strokeRect(double x, double y, double w, double h) {
+            rect(x, y, w, h).append(" S\n");
+        }
+        // open path through the first n points
+        void polyline(double[] xs, double[] ys, int n) {
+            if (n < 2) {return;}
+            num(xs[0]).append(' ');
+            num(ys[0]).append(" m\n");
+            for (int i = 1; i < n; i++) {
+                num(xs[i]).append(' ');
+                num(ys[i]).append(" l\n");
+            }
+            ops.append("S\n");
+        }
+        private StringBuilder rect(double x, double y, double w, double h) {
+            num(x).append(' ');
+            num(y).append(' ');
+            num(w).append(' ');
+            return num(h).append(" re");
+        }
+        // two decimals are below what a printer resolves, and keep the streams short
+        private StringBuilder num(double v) {
+            long r = Math.round(v * 100);
+            if (r < 0) {
+                ops.append('-');
+                r = -r;
+            }
+            ops.append(r / 100);
+            long frac = r % 100;
+            if (frac != 0) {
+                ops.append('.');
+                if (frac < 10) {ops.append('0');}
+                ops.append(frac % 10 == 0 ? frac / 10 : frac);
+            }
+            return ops;
+        }
+    }
+
+    //=================WRITE=================================
+    // objects: 1 catalog, 2 page tree, 3/4 fonts, 5 info, then page and content stream per page
+    void write(Path file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024 + pages.size() * 16 * 1024);
+        int objects = 5 + pages.size() * 2;
+        long[] offsets = new long[objects + 1];
+        ascii(out, "%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        offsets[1] = out.size();
+        ascii(out, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        offsets[2] = out.size();
+        StringBuilder kids = new StringBuilder();
+        for (int i = 0; i < pages.size(); i++) {kids.append(6 + i * 2).append(" 0 R ");}
+        ascii(out, "2 0 obj\n<< /Type /Pages /Kids [" + kids + "] /Count " + pages.size() + " >>\nendobj\n");
+        offsets[3] = out.size();
+        ascii(out, "3 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>\nendobj\n");
+        offsets[4] = out.size();
+        ascii(out, "4 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold /Encoding /WinAnsiEncoding >>\nendobj\n");
+        offsets[5] = out.size();
+        ascii(out, "5 0 obj\n<< /Title (" + title.replaceAll("[()\\\\]", "") + ") /Producer (simulationrealtime) >>\nendobj\n");
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] chunk = new byte[64 * 1024];
+        for (int i = 0; i < pages.size(); i++) {
+            int pageObj = 6 + i * 2;
+            offsets[pageObj] = out.size();
+            ascii(out, pageObj + " 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + (int)PAGE_WIDTH + " " + (int)PAGE_HEIGHT + "]"
+                    + " /Resources << /Font << /F1 3 0 R /F2 4 0 R >> >> /Contents " + (pageObj + 1) + " 0 R >>\nendobj\n");
+            byte[] raw = pages.get(i).ops.toString().getBytes(StandardCharsets.ISO_8859_1);
+            ByteArrayOutputStream packed = new ByteArrayOutputStream(raw.length / 3 + 64);
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            while (!deflater.finished()) {packed.write(chunk, 0, deflater.deflate(chunk));}
+            offsets[pageObj + 1] = out.size();
+            ascii(out, (pageObj + 1) + " 0 obj\n<< /Length " + packed.size() + " /Filter /FlateDecode >>\nstream\n");
+            packed.writeTo(out);
+            ascii(out, "\nendstream\nendobj\n");
+        }
+        deflater.end();
+        long xref = out.size();
+        StringBuilder table = new StringBuilder("xref\n0 " + (objects + 1) + "\n0000000000 65535 f \n");
+        for (int i = 1; i <= objects; i++) {table.append(String.format("%010d 00000 n \n", offsets[i]));}
+        table.append("trailer\n<< /Size ").append(objects + 1).append(" /Root 1 0 R /Info 5 0 R >>\nstartxref\n")
+                .append(xref).append("\n%%EOF\n");
+        ascii(out, table.toString());
+        Files.write(file, out.toByteArray());
+    }
+    private static void ascii(ByteArrayOutputStream out, String s) {
+        byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(b, 0, b.length);
+    }
+}
@@ -0,0 +1,69 @@
+package wrapper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/*
+ * Everything a report shows, taken from the recorded statistics in one go on the Sumo-Stepper thread,
+ * so all parts describe the same simulation step. Only copies and immutable objects are kept, the report
+ * writer reads them on its own thread without locks and without asking SUMO anything.
+ */
+public final class ReportData {
+    static final int CHART_POINTS = 1000; // samples per time series, more than a page width can show
+    static final int GROUP_ROWS = 30; // routes and origin/destination pairs in the report
+
+    private final double time;
+    private final int vehicleCount;
+    private final double meanSpeed;
+    private final MetricStore.Points speedSeries;
+    private final MetricStore.Points vehicleSeries;
+    private final EdgeStatsSnapshot edges;
+    private final List<Hotspot> hotspots;
+    private final TravelTimeHistogram travelTimes;
+    private final List<Map.Entry<String, TravelTimeHistogram>> largestRoutes;
+    private final List<Map.Entry<String, TravelTimeHistogram>> largestODs;
+    private final Predicate<String> edgeFilter; // null = all edges
+    private final boolean routeFiltered;
+
+    // routeFilter narrows the travel times to the vehicles of some routes (null = all vehicles)
+    ReportData(WorldSnapshot world, MetricStore metrics, EdgeStatsSnapshot edges, List<Hotspot> hotspots,
+               TravelTimeStats travelTimes, Predicate<String> edgeFilter, Predicate<String> routeFilter) {
+        this.time = world.getTime();
+        this.vehicleCount = world.getVehicleCount();
+        this.meanSpeed = world.getMeanSpeed();
+        this.speedSeries = series(metrics, MetricStore.MEAN_SPEED);
+        this.vehicleSeries = series(metrics, MetricStore.VEHICLES);
+        this.edges = edges;
+        this.hotspots = hotspots;
+        this.travelTimes = travelTimes.overall(routeFilter);
+        this.largestRoutes = travelTimes.largestByRoute(GROUP_ROWS, routeFilter);
+        this.largestODs = travelTimes.largestByOD(GROUP_ROWS, edgeFilter, routeFilter);
+        this.edgeFilter = edgeFilter;
+        this.routeFiltered = routeFilter != null;
+    }
+    private static MetricStore.Points series(MetricStore metrics, String name) {
+        return metrics.query(name, metrics.getFirstTime(name), metrics.getLastTime(name), CHART_POINTS);
+    }
+//===== GENERAL ===========================================
+    // simulation time of the step the data was taken at
+    public double getTime() {return time;}
+    public int getVehicleCount() {return vehicleCount;}
+    public double getMeanSpeed() {return meanSpeed;}
+    public MetricStore.Points getSpeedSeries() {return speedSeries;}
+    public MetricStore.Points getVehicleSeries() {return vehicleSeries;}
+//===== EDGES =============================================
+    public EdgeStatsSnapshot getEdgeStats() {return edges;}
+    public List<Hotspot> getHotspots() {return hotspots;}
+    public boolean hasEdgeFilter() {return edgeFilter != null;}
+    // edges and origin/destination pairs the report covers
+    public boolean includesEdge(String edgeID) {return edgeFilter == null || edgeFilter.test(edgeID);}
+//===== TRAVEL TIMES ======================================
+    // only vehicles of the selected routes are in the travel times
+    public boolean hasRouteFilter() {return routeFiltered;}
+    public TravelTimeHistogram getTravelTimes() {return travelTimes;}
+    // the routes and "origin->destination" pairs with the most arrived vehicles, most first
+    public List<Map.Entry<String, TravelTimeHistogram>> getLargestRoutes() {return largestRoutes;}
+    // only pairs with an included origin or destination edge
+    public List<Map.Entry<String, TravelTimeHistogram>> getLargestODs() {return largestODs;}
+}
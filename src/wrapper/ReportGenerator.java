@@ -0,0 +1,411 @@
+package wrapper;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Writes a multi-page PDF report from a ReportData snapshot on a low priority "Report-Writer" thread:
+ * summary figures with mean speed and vehicle charts, the travel time distribution with route and
+ * origin/destination tables, and the congestion hotspots with the busiest edges of the last window.
+ * Charts are drawn as PDF vector paths straight from the recorded series, so neither the FX thread nor
+ * SUMO takes part; the caller polls isFinished() and getError().
+ */
+public class ReportGenerator {
+    private static final double MARGIN = 50;
+    private static final double ROW = 11.5; // table row height
+    private static final double TABLE_FONT = 8.5;
+    private static final int EDGE_ROWS = 40;
+
+    private final Path file;
+    private volatile boolean finished = false;
+    private volatile String error = null;
+    private volatile int pages = 0;
+    private volatile long millis = 0;
+
+    public ReportGenerator(Path file) {
+        this.file = file;
+    }
+    //=================GETTER================================
+    public Path getFile() {return file;}
+    public boolean isFinished() {return finished;}
+    // null unless writing failed
+    public String getError() {return error;}
+    public int getPageCount() {return pages;}
+    // time spent rendering and writing, once finished
+    public long getMillis() {return millis;}
+    //=================RUN===================================
+    // render and write data on the writer thread
+    void start(ReportData data) {
+        Thread writer = new Thread(() -> run(data), "Report-Writer");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY); // never competes with the stepper or the FX thread
+        writer.start();
+    }
+    private void run(ReportData data) {
+        long start = System.nanoTime();
+        try {
+            PdfDocument doc = render(data);
+            doc.write(file);
+            pages = doc.getPageCount();
+        }
+        catch (Exception e) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            try {Files.deleteIfExists(file);} catch (Exception ignored) {}
+        }
+        finally {
+            millis = (System.nanoTime() - start) / 1_000_000;
+            finished = true;
+        }
+    }
+    PdfDocument render(ReportData data) {
+        PdfDocument doc = new PdfDocument("Simulation report");
+        Layout out = new Layout(doc);
+        summary(out, data);
+        travelTimes(out, data);
+        congestion(out, data);
+        for (int i = 0; i < doc.getPageCount(); i++) { // footers once the page count is known
+            PdfDocument.Page p = doc.getPage(i);
+            p.fillColor(0.4, 0.4, 0.4);
+            p.textRight(PdfDocument.PAGE_WIDTH - MARGIN, MARGIN / 2, 8, false, "Page " + (i + 1) + " / " + doc.getPageCount());
+        }
+        return doc;
+    }
+
+    //=================SECTIONS==============================
+    private void summary(Layout out, ReportData d) {
+        MetricStore.Points veh = d.getVehicleSeries();
+        MetricStore.Points speed = d.getSpeedSeries();
+        out.page.fillColor(0, 0, 0);
+        out.page.text(MARGIN, out.y - 18, 18, true, "Simulation report");
+        out.y -= 34;
+        String from = speed.size() > 0 ? formatTime(speed.t()[0]) : formatTime(0);
+        out.page.text(MARGIN, out.y, 9, false, "Simulation time " + from + " - " + formatTime(d.getTime())
+                + ", created " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        out.y -= 24;
+        out.heading("Summary");
+        double peak = 0;
+        for (int i = 0; i < veh.size(); i++) {peak = Math.max(peak, veh.v()[i]);}
+        TravelTimeHistogram tt = d.getTravelTimes();
+        EdgeStatsSnapshot edges = d.getEdgeStats();
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] {"Vehicles in the network", String.valueOf(d.getVehicleCount())});
+        rows.add(new String[] {"Peak vehicles", String.format("%.0f", peak)});
+        rows.add(new String[] {"Mean speed", String.format("%.1f km/h", d.getMeanSpeed() * 3.6)});
+        rows.add(new String[] {"Arrived vehicles", String.valueOf(tt.getCount())});
+        rows.add(new String[] {"Travel time mean / median / 90%", formatDuration(tt.getMean()) + " / "
+                + formatDuration(tt.getPercentile(0.5)) + " / " + formatDuration(tt.getPercentile(0.9))});
+        if (edges.getVersion() > 0) {
+            rows.add(new String[] {"Last statistics window", formatTime(edges.getWindowStart()) + " - " + formatTime(edges.getWindowEnd())});
+            rows.add(new String[] {"Window mean vehicles", String.format("%.1f", edges.getNetworkVehicles())});
+            rows.add(new String[] {"Window mean speed", edges.getNetworkMeanSpeed() < 0 ? "-"
+                    : String.format("%.1f km/h", edges.getNetworkMeanSpeed() * 3.6)});
+        }
+        if (d.hasEdgeFilter()) {rows.add(new String[] {"Edges", "filtered selection"});}
+        if (d.hasRouteFilter()) {rows.add(new String[] {"Travel times", "vehicles of the selected routes"});}
+        out.table(new String[] {"", ""}, new double[] {220, 200}, new boolean[] {false, true}, rows);
+        out.y -= 14;
+        out.heading("Mean speed (km/h)");
+        lineChart(out, speed, 3.6, 0.13, 0.4, 0.75);
+        out.heading("Vehicles in the network");
+        lineChart(out, veh, 1, 0.85, 0.45, 0.1);
+    }
+    private void travelTimes(Layout out, ReportData d) {
+        out.newPage();
+        out.heading("Travel times");
+        TravelTimeHistogram tt = d.getTravelTimes();
+        histogram(out, tt);
+        double[] ps = {0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+        String[] head = new String[ps.length + 1];
+        String[] row = new String[ps.length + 1];
+        double[] widths = new double[ps.length + 1];
+        boolean[] right = new boolean[ps.length + 1];
+        for (int i = 0; i <= ps.length; i++) {
+            head[i] = i < ps.length ? String.format("%.0f%%", ps[i] * 100) : "max";
+            row[i] = formatDuration(i < ps.length ? tt.getPercentile(ps[i]) : tt.getMax());
+            widths[i] = (PdfDocument.PAGE_WIDTH - 2 * MARGIN) / (ps.length + 1);
+            right[i] = true;
+        }
+        out.table(head, widths, right, List.<String[]>of(row));
+        out.y -= 14;
+        out.heading("Routes, most used first");
+        out.table(new String[] {"Route", "Vehicles", "Mean", "Median", "90%", "Max"}, new double[] {195, 60, 60, 60, 60, 60},
+                new boolean[] {false, true, true, true, true, true}, groupRows(d.getLargestRoutes()));
+        out.y -= 14;
+        out.heading("Origin -> destination edges, most used first");
+        out.table(new String[] {"Origin -> destination", "Vehicles", "Mean", "Median", "90%", "Max"}, new double[] {195, 60, 60, 60, 60, 60},
+                new boolean[] {false, true, true, true, true, true}, groupRows(d.getLargestODs()));
+    }
+    private void congestion(Layout out, ReportData d) {
+        out.newPage();
+        out.heading("Congestion hotspots");
+        List<String[]> rows = new ArrayList<>();
+        for (Hotspot h : d.getHotspots()) {
+            if (!d.includesEdge(h.edgeID())) {continue;}
+            rows.add(new String[] {String.valueOf(rows.size() + 1), h.edgeID(), String.format("%.3f", h.score()),
+                    String.format("%.0f%%", h.speedRatio() * 100), String.format("%.0f%%", h.occupancy() * 100)});
+        }
+        out.table(new String[] {"#", "Edge", "Score", "Speed / allowed", "Occupancy"}, new double[] {30, 225, 60, 90, 90},
+                new boolean[] {true, false, true, true, true}, rows);
+        out.y -= 14;
+        EdgeStatsSnapshot s = d.getEdgeStats();
+        out.heading(s.getVersion() > 0 ? "Busiest edges, " + formatTime(s.getWindowStart()) + " - " + formatTime(s.getWindowEnd())
+                : "Busiest edges");
+        rows = new ArrayList<>();
+        for (int e : busiestEdges(d, EDGE_ROWS)) {
+            rows.add(new String[] {s.getEdgeID(e), String.format("%.1f", s.getMeanVehicles(e)), String.format("%.1f", s.getDensity(e)),
+                    s.getMeanSpeed(e) < 0 ? "-" : String.format("%.1f", s.getMeanSpeed(e) * 3.6),
+                    String.format("%.0f%%", s.getOccupancy(e) * 100)});
+        }
+        out.table(new String[] {"Edge", "Vehicles", "Veh/km", "Speed km/h", "Occupancy"}, new double[] {215, 70, 70, 70, 70},
+                new boolean[] {false, true, true, true, true}, rows);
+    }
+    private static List<String[]> groupRows(List<Map.Entry<String, TravelTimeHistogram>> groups) {
+        List<String[]> rows = new ArrayList<>(groups.size());
+        for (Map.Entry<String, TravelTimeHistogram> e : groups) {
+            TravelTimeHistogram h = e.getValue();
+            rows.add(new String[] {e.getKey(), String.valueOf(h.getCount()), formatDuration(h.getMean()),
+                    formatDuration(h.getPercentile(0.5)), formatDuration(h.getPercentile(0.9)), formatDuration(h.getMax())});
+        }
+        return rows;
+    }
+    // indices of the n included, non-internal edges with the highest density, highest first
+    private static int[] busiestEdges(ReportData d, int n) {
+        EdgeStatsSnapshot s = d.getEdgeStats();
+        int[] top = new int[n];
+        int count = 0;
+        for (int e = 0; e < s.getEdgeCount(); e++) {
+            double v = s.getDensity(e);
+            if (v <= 0 || (count == n && v <= s.getDensity(top[n - 1]))) {continue;}
+            String id = s.getEdgeID(e);
+            if (id.startsWith(":") || !d.includesEdge(id)) {continue;}
+            int i = count < n ? count++ : n - 1;
+            while (i > 0 && s.getDensity(top[i - 1]) < v) { // insertion into the sorted top
+                top[i] = top[i - 1];
+                i--;
+            }
+            top[i] = e;
+        }
+        return Arrays.copyOf(top, count);
+    }
+
+    //=================CHARTS================================
+    // time series as a line over simulation time, values multiplied by scale
+    private void lineChart(Layout out, MetricStore.Points p, double scale, double r, double g, double b) {
+        double h = 170;
+        out.need(h + 24);
+        double x0 = MARGIN + 40, x1 = PdfDocument.PAGE_WIDTH - MARGIN, y1 = out.y - 4, y0 = y1 - h;
+        PdfDocument.Page page = out.page;
+        int n = p.size();
+        if (n == 0) {
+            page.fillColor(0.4, 0.4, 0.4);
+            page.text(x0, y1 - 14, 9, false, "No data recorded");
+            out.y = y0 - 24;
+            return;
+        }
+        double tMin = p.t()[0], tMax = Math.max(p.t()[n - 1], tMin + 1);
+        double vMax = 0;
+        for (int i = 0; i < n; i++) {vMax = Math.max(vMax, p.v()[i] * scale);}
+        double vStep = niceStep(Math.max(vMax, 1) / 5);
+        vMax = Math.max(vStep, Math.ceil(vMax / vStep) * vStep);
+        page.lineWidth(0.4);
+        page.strokeColor(0.85, 0.85, 0.85);
+        page.fillColor(0.3, 0.3, 0.3);
+        for (double v = 0; v <= vMax + vStep / 2; v += vStep) {
+            double y = y0 + v / vMax * h;
+            page.line(x0, y, x1, y);
+            page.textRight(x0 - 4, y - 3, 7.5, false, formatNumber(v));
+        }
+        double tStep = timeStep((tMax - tMin) / 6);
+        for (double t = Math.ceil(tMin / tStep) * tStep; t <= tMax; t += tStep) {
+            double x = x0 + (t - tMin) / (tMax - tMin) * (x1 - x0);
+            page.line(x, y0, x, y1);
+            page.textCenter(x, y0 - 11, 7.5, false, formatTime(t));
+        }
+        page.strokeColor(0.3, 0.3, 0.3);
+        page.strokeRect(x0, y0, x1 - x0, h);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = x0 + (p.t()[i] - tMin) / (tMax - tMin) * (x1 - x0);
+            ys[i] = y0 + Math.max(0, p.v()[i] * scale) / vMax * h;
+        }
+        page.lineWidth(1);
+        page.strokeColor(r, g, b);
+        page.polyline(xs, ys, n);
+        out.y = y0 - 26;
+    }
+    // travel time distribution as bars over the logarithmic buckets that hold vehicles
+    private void histogram(Layout out, TravelTimeHistogram tt) {
+        double h = 190;
+        out.need(h + 24);
+        double x0 = MARGIN + 40, x1 = PdfDocument.PAGE_WIDTH - MARGIN, y1 = out.y - 4, y0 = y1 - h;
+        PdfDocument.Page page = out.page;
+        int first = -1, last = -1;
+        for (int b = 0; b < tt.getBucketCount(); b++) {
+            if (tt.getBucketValue(b) == 0) {continue;}
+            if (first < 0) {first = b;}
+            last = b;
+        }
+        if (first < 0) {
+            page.fillColor(0.4, 0.4, 0.4);
+            page.text(x0, y1 - 14, 9, false, "No vehicle has arrived yet");
+            out.y = y0 - 24;
+            return;
+        }
+        // bars of 1, 2, 4, 8 or 16 buckets, aligned to powers of two so the octave labels fall on bar edges
+        int group = 1;
+        while ((last - first + 1) / group > 48 && group < 16) {group *= 2;}
+        first = first == 0 ? 0 : 1 + (first - 1) / group * group;
+        int bars = (last - first) / group + 1;
+        long[] counts = new long[bars];
+        long maxCount = 1;
+        for (int i = 0; i < bars; i++) {
+            for (int b = first + i * group; b < Math.min(tt.getBucketCount(), first + (i + 1) * group); b++) {counts[i] += tt.getBucketValue(b);}
+            maxCount = Math.max(maxCount, counts[i]);
+        }
+        double cStep = niceStep(Math.max(maxCount, 5) / 5.0);
+        double cMax = Math.ceil(maxCount / cStep) * cStep;
+        double barW = (x1 - x0) / bars;
+        page.lineWidth(0.4);
+        page.strokeColor(0.85, 0.85, 0.85);
+        page.fillColor(0.3, 0.3, 0.3);
+        for (double c = 0; c <= cMax + cStep / 2; c += cStep) {
+            double y = y0 + c / cMax * h;
+            page.line(x0, y, x1, y);
+            page.textRight(x0 - 4, y - 3, 7.5, false, formatNumber(c));
+        }
+        double lastLabel = -100;
+        for (int i = 0; i < bars; i++) {
+            int b = first + i * group;
+            double x = x0 + i * barW;
+            if ((b - 1) % TravelTimeHistogram.SUB_BUCKETS == 0 && x - lastLabel > 30) { // octave boundary
+                page.fillColor(0.3, 0.3, 0.3);
+                page.textCenter(x, y0 - 11, 7.5, false, formatDuration(tt.getBucketStart(b)));
+                lastLabel = x;
+            }
+            if (counts[i] == 0) {continue;}
+            page.fillColor(0.13, 0.4, 0.75);
+            page.fillRect(x + barW * 0.1, y0, barW * 0.8, counts[i] / cMax * h);
+        }
+        page.strokeColor(0.3, 0.3, 0.3);
+        page.strokeRect(x0, y0, x1 - x0, h);
+        page.fillColor(0.3, 0.3, 0.3);
+        page.textRight(x1, y0 - 22, 7.5, false, "travel time, logarithmic");
+        out.y = y0 - 34;
+    }
+    // 1, 2 or 5 times a power of ten, at least raw
+    private static double niceStep(double raw) {
+        double pow = Math.pow(10, Math.floor(Math.log10(raw)));
+        double f = raw / pow;
+        return (f <= 1 ? 1 : f <= 2 ? 2 : f <= 5 ? 5 : 10) * pow;
+    }
+    // a readable time tick in seconds, at least raw
+    private static double timeStep(double raw) {
+        double[] steps = {1, 2, 5, 10, 15, 30, 60, 120, 300, 600, 900, 1800, 3600, 7200, 10800, 21600, 43200, 86400};
+        for (double s : steps) {if (s >= raw) {return s;}}
+        return niceStep(raw / 86400) * 86400;
+    }
+
+    //=================FORMAT================================
+    // h:mm:ss or m:ss of simulation time
+    static String formatTime(double seconds) {
+        long s = Math.round(Math.max(0, seconds));
+        if (s >= 3600) {return String.format("%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);}
+        return String.format("%d:%02d", s / 60, s % 60);
+    }
+    // a duration with a unit, seconds below a minute
+    static String formatDuration(double seconds) {
+        if (seconds < 10) {return String.format("%.1f s", seconds);}
+        if (seconds < 60) {return String.format("%.0f s", seconds);}
+        return formatTime(seconds);
+    }
+    private static String formatNumber(double v) {
+        return v == Math.rint(v) ? String.format("%.0f", v) : String.format("%.1f", v);
+    }
+
+    // top-down writing position, starting new pages as needed
+    private static class Layout {
+        final PdfDocument doc;
+        PdfDocument.Page page;
+        double y;
+
+        Layout(PdfDocument doc) {
+            this.doc = doc;
+            newPage();
+        }
+        void newPage() {
+            page = doc.newPage();
+            y = PdfDocument.PAGE_HEIGHT - MARGIN;
+        }
+        // room for h more points on this page
+        void need(double h) {
+            if (y - h < MARGIN) {newPage();}
+        }
+        void heading(String text) {
+            need(40);
+            page.fillColor(0, 0, 0);
+            page.text(MARGIN, y - 12, 12, true, text);
+            y -= 22;
+        }
+        // rows of cells, header repeated on every page the table runs over; empty headers are not drawn
+        void table(String[] headers, double[] widths, boolean[] right, List<String[]> rows) {
+            boolean hasHeader = false;
+            for (String h : headers) {hasHeader |= !h.isEmpty();}
+            if (rows.isEmpty()) {
+                need(ROW);
+                page.fillColor(0.4, 0.4, 0.4);
+                page.text(MARGIN, y - ROW + 3, TABLE_FONT, false, "None");
+                y -= ROW;
+                return;
+            }
+            boolean header = hasHeader;
+            for (int r = 0; r < rows.size(); r++) {
+                if (y - ROW * (header ? 2 : 1) < MARGIN) {
+                    newPage();
+                    header = hasHeader;
+                }
+                if (header) {
+                    row(headers, widths, right, true);
+                    page.strokeColor(0.3, 0.3, 0.3);
+                    page.lineWidth(0.5);
+                    page.line(MARGIN, y + 2, MARGIN + sum(widths), y + 2);
+                    header = false;
+                }
+                if (r % 2 == 1) {
+                    page.fillColor(0.95, 0.95, 0.95);
+                    page.fillRect(MARGIN, y - ROW + 2, sum(widths), ROW);
+                }
+                row(rows.get(r), widths, right, false);
+            }
+        }
+        private void row(String[] cells, double[] widths, boolean[] right, boolean bold) {
+            page.fillColor(0, 0, 0);
+            double x = MARGIN;
+            for (int c = 0; c < cells.length; c++) {
+                String text = fit(cells[c], widths[c] - 6);
+                if (right[c]) {page.textRight(x + widths[c] - 3, y - ROW + 4, TABLE_FONT, bold, text);}
+                else {page.text(x + 3, y - ROW + 4, TABLE_FONT, bold, text);}
+                x += widths[c];
+            }
+            y -= ROW;
+        }
+        // text shortened with ".." to the width
+        private static String fit(String text, double width) {
+            if (PdfDocument.textWidth(text, TABLE_FONT) <= width) {return text;}
+            int n = text.length();
+            while (n > 1 && PdfDocument.textWidth(text.substring(0, n) + "..", TABLE_FONT) > width) {n--;}
+            return text.substring(0, n) + "..";
+        }
+        private static double sum(double[] v) {
+            double s = 0;
+            for (double x : v) {s += x;}
+            return s;
+        }
+    }
+}
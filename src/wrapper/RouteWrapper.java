@@ -2,11 +2,18 @@ package wrapper;
 
 import it.polito.appeal.traci.SumoTraciConnection;
 import de.tudresden.sumo.cmd.Route;
+import de.tudresden.sumo.objects.SumoStringList;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 
 class RouteWrapper {
+    // cached route list, fetched from SUMO only after it was invalidated (start or a route was added)
+    static List<String> getRouteIDs(SimulationWrapper temp) {
+        if (temp.routesDirty) {updateRouteIDs(temp);}
+        return temp.RouteList;
+    }
     static void updateRouteIDs(SimulationWrapper temp) {
         try {
             List<String> newRouteList = (List<String>) temp.conn.do_job_get(Route.getIDList());
@@ -14,8 +21,20 @@ class RouteWrapper {
             for (String x : newRouteList) {
                 if (x.charAt(0) != '!') {validRoute.add(x);}
             }
-            temp.RouteList = validRoute;
+            temp.RouteList = Collections.unmodifiableList(validRoute);
+            temp.routeVersion++;
+            temp.routesDirty = false;
         }
         catch(Exception e) {System.out.println("Unable to update route list");}
     }
-}
\ No newline at end of file
+    // add a route and invalidate the cached list
+    static boolean addRoute(SimulationWrapper temp, String inputID, List<String> inputEdges) {
+        try {
+            temp.conn.do_job_set(Route.add(inputID, new SumoStringList(inputEdges)));
+            temp.routesDirty = true;
+            return true;
+        }
+        catch(Exception e) {System.out.println("Unable to add route " + inputID);}
+        return false;
+    }
+}
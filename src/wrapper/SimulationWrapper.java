@@ -4,6 +4,7 @@ import it.polito.appeal.traci.SumoTraciConnection;
 import it.polito.appeal.traci.TraCIException;
 
 import de.tudresden.sumo.cmd.Simulation;
+import de.tudresden.sumo.cmd.Junction;
 import de.tudresden.sumo.cmd.Trafficlight;
 import de.tudresden.sumo.cmd.Vehicle;
 import de.tudresden.sumo.cmd.Route;
@@ -13,10 +14,15 @@ import de.tudresden.sumo.objects.SumoStringList;
 import de.tudresden.sumo.objects.SumoPrimitive;
 import de.tudresden.sumo.objects.SumoPosition2D;
 import de.tudresden.sumo.objects.SumoColor;
+import de.tudresden.sumo.objects.SumoGeometry;
+import de.tudresden.sumo.objects.SumoObject;
 
 import de.tudresden.sumo.config.Constants;
 
 import de.tudresden.sumo.subscription.VariableSubscription;
+import de.tudresden.sumo.subscription.ContextSubscription;
+import de.tudresden.sumo.subscription.SubscriptionContext;
+import de.tudresden.sumo.subscription.SumoDomain;
 import de.tudresden.sumo.subscription.SubscribtionVariable;
 import de.tudresden.sumo.subscription.SubscriptionObject;
 import de.tudresden.sumo.subscription.ResponseType;
@@ -24,19 +30,76 @@ import de.tudresden.sumo.subscription.ResponseType;
 import de.tudresden.sumo.util.Observer;
 import de.tudresden.sumo.util.Observable;
 
+import paser.Networkpaser;
+
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
 
 public class SimulationWrapper implements Observer {
     protected static SumoTraciConnection conn;
     protected int delay = 200;
+    protected double stepLength = 1; // simulated seconds per step
+    protected double simTime = 0; // simulation time of the last step, from the simulation subscription
+    // paces Step() against wall-clock deadlines, see setRealTimeFactor
+    private final StepClock clock = new StepClock(delay * 1_000_000L);
+    private boolean skipPublishWhenBehind = false;
+    private long lastPublishNanos = 0;
+    private static final long MIN_PUBLISH_INTERVAL_NANOS = 1_000_000_000L / 60; // one display frame
+    protected boolean contextSubscription = false; // one subscription for all vehicles instead of one per vehicle
 
     protected final HashMap<String, TrafficLightWrapper> TrafficLightList = new HashMap<>();
-    protected final HashMap<String, VehicleWrapper> VehicleList = new HashMap<>();
-    protected List<String> RouteList = new ArrayList<String>();
+    protected final VehicleStore VehicleList = new VehicleStore(256); // only touched by the stepper thread
+    protected volatile List<String> RouteList = new ArrayList<String>(); // cached, see RouteWrapper.getRouteIDs
+    protected volatile boolean routesDirty = true;
+    protected volatile int routeVersion = 0; // increases every time the route list is reloaded
+    protected int maxDeparturesPerStep = 200; // bulk injections are spread over steps by this many vehicles
+    // injected vehicles not sent yet, each step sends a share of them (stepper thread only)
+    private final ArrayDeque<VehicleSpec> pendingInjections = new ArrayDeque<>();
+    private static final long INJECT_BUDGET_NANOS = 20_000_000L; // TraCI time per step spent on injections
+    private static final long EXPORT_CLOSE_MILLIS = 5000; // End() waits this long for the export files
+    // vehicles departed in the current step that still need their subscription
+    private final List<String> pendingDepartures = new ArrayList<>();
+    // vehicles whose one-step subscription with the static attributes runs out, re-subscribed without them
+    private final List<String> awaitingStatic = new ArrayList<>();
+    private static final int DEFAULT_COLOR = WorldSnapshot.packColor(255, 255, 0, 255); // SUMO default yellow
+    // work handed to the stepper thread by other threads, run after the next time step
+    private final ConcurrentLinkedQueue<Runnable> stepperTasks = new ConcurrentLinkedQueue<>();
+    private final TrafficLightScheduler tlScheduler = new TrafficLightScheduler(); // stepper thread only
+    // state of the last finished step, written by the stepper thread and read by the FX thread
+    private final AtomicReference<WorldSnapshot> snapshot = new AtomicReference<>(WorldSnapshot.EMPTY);
+    // vehicle changes of the last DELTA_RING published versions, delta of version v sits at v % DELTA_RING
+    private static final int DELTA_RING = 64;
+    private final AtomicReferenceArray<VehicleDelta> deltas = new AtomicReferenceArray<>(DELTA_RING);
+    // slots added and moved since the last snapshot, reused by publishSnapshot (stepper thread only)
+    private int[] addedSlots = new int[256];
+    private int[] movedSlots = new int[256];
+    // per-edge statistics, only kept when the network was given with setNetwork
+    private EdgeStats edgeStats;
+    private volatile EdgeStatsSnapshot edgeStatsSnapshot = EdgeStatsSnapshot.EMPTY;
+    private double edgeStatsWindow = 60; // simulated seconds per statistics window
+    private final TravelTimeStats travelTimes = new TravelTimeStats();
+    // congestion hotspots over hotspotBuckets * hotspotBucketSeconds of simulation time, part of edgeStats
+    private Networkpaser.NetworkModel network;
+    private double hotspotBucketSeconds = 10;
+    private int hotspotBuckets = 6;
+    private int hotspotCount = 20;
+    private volatile List<Hotspot> hotspots = List.of();
+    private final MetricStore metrics = new MetricStore(); // network time series for charts and reports
+    private StreamExporter exporter; // running export, stepper thread only
+    private String[] tlIDs = new String[0]; // traffic light order used in snapshots
+    private String[][] tlFromLanes = new String[0][];
+    private String[][] tlToLanes = new String[0][];
     // Constructor 1
     public SimulationWrapper(String sumocfg, double step_length, String sumo_bin){
+        stepLength = step_length;
         conn = new SumoTraciConnection(sumo_bin, sumocfg);
         conn.addOption("step-length", step_length + "");
         conn.addOption("start", "true"); //start sumo immediately
@@ -46,6 +109,7 @@ public class SimulationWrapper implements Observer {
     public SimulationWrapper(String sumocfg){
         String sumo_bin = "sumo";
         double step_length = 1;
+        stepLength = step_length;
         conn = new SumoTraciConnection(sumo_bin, sumocfg);
         conn.addOption("step-length", step_length + "");
         conn.addOption("start", "true"); //start sumo immediately
@@ -55,11 +119,17 @@ public class SimulationWrapper implements Observer {
     //for testing
     public void test() {
         int a = VehicleList.size();
-        System.out.println("Size of hash map of vehicle is " + a);
+        System.out.println("Number of vehicles in the store is " + a);
     }
     public boolean isClosed() {
         return conn.isClosed();
     }
+    // network used for per-edge statistics (call before Start)
+    public void setNetwork(Networkpaser.NetworkModel model) {
+        network = model;
+        edgeStats = model == null ? null : new EdgeStats(model, edgeStatsWindow);
+        if (edgeStats != null) {edgeStats.setHotspotDetector(new HotspotDetector(model, hotspotBucketSeconds, hotspotBuckets, hotspotCount));}
+    }
     // Start simulation, update TrafficLightList, more will be implemented
     public void Start(){
         try {
@@ -68,26 +138,88 @@ public class SimulationWrapper implements Observer {
             conn.addObserver(this);// add observer
             //start subscription to look out for departed (spawn in) and arrived (despawn) vehicle
             VariableSubscription vs = new VariableSubscription(SubscribtionVariable.simulation, 0, 100000 * 60, "");//set up the variable subscriptoion
+            // results come back in this order: the time first, so departures, arrivals and the statistics
+            // windows of a step all use that step's time
+            vs.addCommand(Constants.VAR_TIME);
             vs.addCommand(Constants.VAR_DEPARTED_VEHICLES_IDS);//choose when
             vs.addCommand(Constants.VAR_ARRIVED_VEHICLES_IDS);
             conn.do_subscription(vs);//start the subscription
+            if (contextSubscription) {subscribeVehicleContext();}
 
             TrafficLightWrapper.updateTrafficLightIDs(this);
+            RouteWrapper.updateRouteIDs(this);
+            publishSnapshot();
             System.out.println("Started successfully.");
         }
         catch(Exception e) {System.out.println("Failed to start.");}
     }
-    // Do a simulation's time step
+    // Subscribe position/speed/angle of every vehicle with one context subscription.
+    // The context is centred on a junction and its range covers the whole network boundary,
+    // so SUMO answers with all vehicles in a single response per step.
+    private void subscribeVehicleContext() {
+        try {
+            SumoGeometry bounds = (SumoGeometry)conn.do_job_get(Simulation.getNetBoundary());
+            @SuppressWarnings("unchecked")
+            List<String> junctionIDs = (List<String>)conn.do_job_get(Junction.getIDList());
+            String ego = junctionIDs.get(0);
+            SumoPosition2D center = (SumoPosition2D)conn.do_job_get(Junction.getPosition(ego));
+            double range = 0;
+            for (SumoPosition2D a : bounds.coords) {
+                for (SumoPosition2D b : bounds.coords) { // corners of the bounding box
+                    range = Math.max(range, Math.hypot(a.x - center.x, b.y - center.y));
+                }
+            }
+            ContextSubscription cs = new ContextSubscription(SubscriptionContext.junction, 0, 100000 * 60, ego, SumoDomain.vehicles, range + 1);
+            cs.addCommand(Constants.VAR_POSITION);
+            cs.addCommand(Constants.VAR_SPEED);
+            cs.addCommand(Constants.VAR_ANGLE);
+            cs.addCommand(Constants.VAR_ROAD_ID);
+            cs.addCommand(Constants.VAR_COLOR); // static attributes come from a one-step subscription per departure
+            conn.do_subscription(cs);
+            System.out.println("Vehicle context subscription around " + ego + " with range " + range);
+        }
+        catch (Exception e) {
+            contextSubscription = false; // fall back to one subscription per vehicle
+            System.out.println("Context subscription failed, using vehicle subscriptions.");
+        }
+    }
+    // Do a simulation's time step, waiting for its wall-clock deadline first
     public void Step(){
         try {
-            Thread.sleep(delay);
+            clock.awaitNextStep();
             conn.do_timestep();
+            resolveDepartures();
+            runStepperTasks();
+            sendInjections();
+            tlScheduler.process(this, simTime);
+            if (edgeStats != null && edgeStats.finishStep(simTime)) {hotspots = edgeStats.hotspots();}
+            // when running late, publish at most once per display frame so the stepper can catch up
+            long now = System.nanoTime();
+            if (!skipPublishWhenBehind || !clock.isBehind() || now - lastPublishNanos >= MIN_PUBLISH_INTERVAL_NANOS) {
+                publishSnapshot();
+                lastPublishNanos = now;
+            }
+            if (exporter != null) {exporter.offerStep(VehicleList, simTime);} // every step, published or not
         }
         catch(Exception e) {System.out.println("Failed to step.");}
     }
     // Close simulation
+    // call on the stepper thread after its last Step(), the export writer is daemon so End() waits for
+    // the export files to be complete before closing
     public void End() {
-        conn.close();
+        runStepperTasks(); // export start/stop/cancel queued after the last step
+        StreamExporter ex = exporter;
+        exporter = null;
+        if (ex != null) {
+            ex.finish();
+            long deadline = System.currentTimeMillis() + EXPORT_CLOSE_MILLIS;
+            try {
+                while (!ex.isFinished() && System.currentTimeMillis() < deadline) {Thread.sleep(10);}
+            }
+            catch (InterruptedException e) {Thread.currentThread().interrupt();}
+            if (!ex.isFinished()) {System.out.println("Export still writing, its files may be incomplete.");}
+        }
+        if (!conn.isClosed()) {conn.close();}
     }
     // Get simulation time
     public double getTime(int po) {
@@ -102,25 +234,23 @@ public class SimulationWrapper implements Observer {
     //(new) update from subscription, abstract method of observer
     public void update(Observable arg0, SubscriptionObject so) {
         if (so.response == ResponseType.SIM_VARIABLE) { 
-            if (so.variable == Constants.VAR_DEPARTED_VEHICLES_IDS) {//when new vehicle detect
+            if (so.variable == Constants.VAR_TIME) {
+                SumoPrimitive sp = (SumoPrimitive) so.object;
+                simTime = (double) sp.val;
+                // close finished statistics windows before this step's vehicle updates are applied
+                if (edgeStats != null && edgeStats.advanceTo(simTime)) {
+                    edgeStatsSnapshot = edgeStats.last();
+                    if (exporter != null) {exporter.offerEdges(edgeStatsSnapshot);}
+                }
+            }
+            else if (so.variable == Constants.VAR_DEPARTED_VEHICLES_IDS) {//when new vehicle detect
                 SumoStringList ssl = (SumoStringList) so.object;
                 if (ssl.size() > 0) {
                     for (String vehID : ssl) {
-                        //set up the subscription for the vehicle (1 vehicle)
-                        VariableSubscription vs = new VariableSubscription(SubscribtionVariable.vehicle, 0, 100000 * 60, vehID);
-                        vs.addCommand(Constants.VAR_POSITION);
-                        vs.addCommand(Constants.VAR_SPEED);
-                        vs.addCommand(Constants.VAR_ANGLE);
-                        
-                        try {
-                            // create a vehicle wrapper object and add to hash map
-                            SumoColor color = (SumoColor)conn.do_job_get(Vehicle.getColor(vehID));
-                            VehicleWrapper y = new VehicleWrapper(vehID, color);
-                            VehicleList.put(vehID, y);
-                            // start subscription of the vehicle
-                            conn.do_subscription(vs);
-                        } 
-                        catch (Exception ex) {System.err.println("subscription to " + vehID + " failed");}
+                        // take a slot in the vehicle store, no TraCI call inside the callback
+                        int slot = VehicleList.add(vehID, DEFAULT_COLOR);
+                        VehicleList.departTime[slot] = simTime; // arrivals use the same clock, so travel times match
+                        pendingDepartures.add(vehID); // subscribed after the step
                     }
                 }
             }
@@ -128,43 +258,375 @@ public class SimulationWrapper implements Observer {
                 SumoStringList ssl = (SumoStringList) so.object;
                 if (ssl.size() > 0) {
                     for (String vehID : ssl) {
-                        try {
-                            VehicleList.remove(vehID);
-                            System.out.println("Delete " + vehID + " from the hashmap");
+                        pendingDepartures.remove(vehID); // departed and arrived in the same step
+                        int slot = VehicleList.slotOf(vehID);
+                        if (slot >= 0) {
+                            if (edgeStats != null) {edgeStats.remove(slot, simTime);}
+                            if (!Double.isNaN(VehicleList.departTime[slot])) {
+                                travelTimes.record(simTime - VehicleList.departTime[slot], VehicleList.routeIDs[slot],
+                                        VehicleList.originEdge[slot], VehicleList.lastEdge[slot]);
+                            }
                         }
-                        catch (Exception ex) {
-                            System.err.println("Unable to delete " + vehID + " from hashmap");
+                        if (!VehicleList.remove(vehID)) {
+                            System.err.println("Unable to delete " + vehID + " from vehicle store");
                         }
                     }
                 }
             }
         } 
         else if (so.response == ResponseType.VEHICLE_VARIABLE) {
-            VehicleWrapper x = VehicleList.get(so.id);
-            if (so.variable == Constants.VAR_SPEED) {
-                SumoPrimitive sp = (SumoPrimitive) so.object;
-                x.speed = (double) sp.val;
-            } 
-            else if (so.variable == Constants.VAR_POSITION) {
-                SumoPosition2D sc = (SumoPosition2D) so.object;
-                x.position = sc;
-            }
-            else if (so.variable == Constants.VAR_ANGLE) {
-                SumoPrimitive sp = (SumoPrimitive) so.object;
-                x.angle = (double) sp.val;
-            }
+            updateVehicleVariable(so.id, so.variable, so.object);
+        }
+        else if (so.response == ResponseType.JUNCTION_CONTEXT) {
+            // context results carry the junction in id and the vehicle in name
+            updateVehicleVariable(so.name, so.variable, so.object);
         }
         else if (so.response == ResponseType.TL_VARIABLE) {
+            TrafficLightWrapper x = TrafficLightList.get(so.id);
+            SumoPrimitive sp = (SumoPrimitive) so.object;
+            if (x == null) {return;}
             if (so.variable == Constants.TL_RED_YELLOW_GREEN_STATE) {
-                SumoPrimitive sp = (SumoPrimitive) so.object;
-                TrafficLightWrapper x = TrafficLightList.get(so.id);
                 x.lightDef = (String) sp.val;
             }
+            else if (so.variable == Constants.TL_CURRENT_PHASE) {
+                x.currentPhase = (int) sp.val;
+            }
+            else if (so.variable == Constants.TL_CURRENT_PROGRAM) {
+                x.setCurrentProgram((String) sp.val);
+            }
+        }
+    }
+    // write one subscribed vehicle variable into the vehicle store
+    private void updateVehicleVariable(String vehID, int variable, SumoObject object) {
+        int slot = VehicleList.slotOf(vehID);
+        if (slot < 0) {return;} // arrived in this step, or departure not seen yet
+        if (variable == Constants.VAR_SPEED) {
+            SumoPrimitive sp = (SumoPrimitive) object;
+            VehicleList.speed[slot] = (double) sp.val;
+            if (edgeStats != null) {edgeStats.setSpeed(slot, VehicleList.speed[slot], simTime);}
+        } 
+        else if (variable == Constants.VAR_POSITION) {
+            SumoPosition2D sc = (SumoPosition2D) object;
+            VehicleList.setPosition(slot, sc.x, sc.y);
+        }
+        else if (variable == Constants.VAR_ANGLE) {
+            SumoPrimitive sp = (SumoPrimitive) object;
+            VehicleList.angle[slot] = (double) sp.val;
+        }
+        else if (variable == Constants.VAR_ROAD_ID) {
+            String edge = (String)((SumoPrimitive) object).val;
+            if (edgeStats != null) {edgeStats.setEdge(slot, edge, simTime);}
+            if (!edge.isEmpty() && !edge.startsWith(":")) { // internal junction edges are no origin or destination
+                if (VehicleList.originEdge[slot] == null) {VehicleList.originEdge[slot] = edge;}
+                VehicleList.lastEdge[slot] = edge;
+            }
+        }
+        else if (variable == Constants.VAR_COLOR) {
+            SumoColor sc = (SumoColor) object;
+            VehicleList.rgba[slot] = WorldSnapshot.packColor(sc.r, sc.g, sc.b, sc.a);
+        }
+        // static attributes are cached from the first result
+        else if (variable == Constants.VAR_TYPE) {
+            if (VehicleList.typeIDs[slot] == null) {VehicleList.typeIDs[slot] = (String)((SumoPrimitive) object).val;}
+        }
+        else if (variable == Constants.VAR_ROUTE_ID) {
+            if (VehicleList.routeIDs[slot] == null) {VehicleList.routeIDs[slot] = (String)((SumoPrimitive) object).val;}
+        }
+        else if (variable == Constants.VAR_LENGTH) {
+            if (VehicleList.length[slot] == 0) {
+                VehicleList.length[slot] = (double)((SumoPrimitive) object).val;
+                if (edgeStats != null) {edgeStats.setLength(slot, VehicleList.length[slot], simTime);}
+            }
+        }
+    }
+    // Subscribe the vehicles departed in the last step in one pass after the step.
+    // Type, length and route never change, so they are only asked for once: the first subscription of a
+    // departure carries them and ends with the next step. SUMO replaces a vehicle's subscription when it is
+    // subscribed again, so one step later the vehicle gets its lasting subscription without them.
+    // With the context subscription only the static attributes need the one-step subscription.
+    private void resolveDepartures() {
+        for (String vehID : awaitingStatic) {
+            if (VehicleList.slotOf(vehID) < 0) {continue;} // arrived meanwhile
+            try {
+                VariableSubscription vs = new VariableSubscription(SubscribtionVariable.vehicle, 0, 100000 * 60, vehID);
+                addDynamicVehicleCommands(vs);
+                conn.do_subscription(vs);
+            }
+            catch (Exception ex) {System.err.println("subscription to " + vehID + " failed");}
+        }
+        awaitingStatic.clear();
+        double nextStep = simTime + stepLength * 1.5; // answered with the next step, expired by the one after
+        for (String vehID : pendingDepartures) {
+            try {
+                VariableSubscription vs = new VariableSubscription(SubscribtionVariable.vehicle, 0, nextStep, vehID);
+                if (!contextSubscription) {addDynamicVehicleCommands(vs);}
+                vs.addCommand(Constants.VAR_TYPE);
+                vs.addCommand(Constants.VAR_LENGTH);
+                vs.addCommand(Constants.VAR_ROUTE_ID);
+                conn.do_subscription(vs);
+                if (!contextSubscription) {awaitingStatic.add(vehID);}
+            }
+            catch (Exception ex) {System.err.println("subscription to " + vehID + " failed");}
         }
+        pendingDepartures.clear();
+    }
+    // variables sent every step; colour stays here because setVehicleColor changes it
+    private static void addDynamicVehicleCommands(VariableSubscription vs) {
+        vs.addCommand(Constants.VAR_POSITION);
+        vs.addCommand(Constants.VAR_SPEED);
+        vs.addCommand(Constants.VAR_ANGLE);
+        vs.addCommand(Constants.VAR_ROAD_ID);
+        vs.addCommand(Constants.VAR_COLOR);
+    }
+    // use one context subscription for all vehicles (call before Start)
+    public void setContextSubscription(boolean enable) {
+        contextSubscription = enable;
     }
-    // set delay
+    // set delay, the wall-clock period of one step in ms (0 = as fast as possible)
     public void setDelay(int input) {
-        delay = input;
+        delay = Math.max(0, input);
+        clock.setPeriodNanos(delay * 1_000_000L);
+    }
+    // run at a multiple of real time, e.g. 1 = real time, 5 = five times faster, 0 or less = as fast as possible
+    public void setRealTimeFactor(double factor) {
+        long period = factor > 0 ? Math.round(stepLength * 1_000_000_000L / factor) : 0;
+        delay = (int)(period / 1_000_000L);
+        clock.setPeriodNanos(period);
+    }
+    // target real-time factor, 0 if running as fast as possible
+    public double getRealTimeFactor() {
+        long period = clock.getPeriodNanos();
+        return period > 0 ? stepLength * 1_000_000_000L / period : 0;
+    }
+    // how many ms the last step started after its deadline
+    public double getStepLag() {
+        return clock.getLagNanos() / 1_000_000.0;
+    }
+    // number of steps that started late since the start
+    public long getStepOverruns() {
+        return clock.getOverruns();
+    }
+    public boolean isBehindSchedule() {
+        return clock.isBehind();
+    }
+    // skip snapshots (UI updates) that could not be shown anyway while the stepper is behind
+    public void setSkipPublishWhenBehind(boolean enable) {
+        skipPublishWhenBehind = enable;
+    }
+    // per-edge statistics of the last completed window, safe to call from any thread
+    public EdgeStatsSnapshot getEdgeStats() {
+        return edgeStatsSnapshot;
+    }
+    // length of the statistics windows in simulated seconds, used from the next window on
+    public void setEdgeStatsWindow(double seconds) {
+        edgeStatsWindow = Math.max(1, seconds);
+        runOnStepper(() -> {
+            if (edgeStats != null) {edgeStats.setWindowLength(edgeStatsWindow);}
+        });
+    }
+    // stream every step's vehicles and every statistics window to <basePath>_vehicles/_edges files until
+    // stopExport or cancelExport; null if the files cannot be created
+    public StreamExporter startExport(String basePath, StreamExporter.Format format) {
+        if (isClosed()) { // no more steps to stream
+            System.out.println("Simulation is closed, nothing to export");
+            return null;
+        }
+        String ext = format == StreamExporter.Format.CSV ? ".csv" : ".bin";
+        try {
+            StreamExporter ex = new StreamExporter(Path.of(basePath + "_vehicles" + ext),
+                    Path.of(basePath + "_edges" + ext), format);
+            runOnStepperOrNow(() -> {
+                if (exporter != null) {exporter.finish();}
+                exporter = ex;
+            });
+            return ex;
+        }
+        catch (Exception e) {System.out.println("Unable to start export to " + basePath + ": " + e.getMessage());}
+        return null;
+    }
+    // finish the running export, the files are complete once its isFinished() is true
+    public void stopExport() {
+        runOnStepperOrNow(() -> {
+            if (exporter != null) {exporter.finish();}
+            exporter = null;
+        });
+    }
+    // abort the running export and delete its files
+    public void cancelExport() {
+        runOnStepperOrNow(() -> {
+            if (exporter != null) {exporter.cancel();}
+            exporter = null;
+        });
+    }
+    // write a PDF report of the statistics recorded so far to file on a worker thread; edgeFilter limits the
+    // edge, hotspot and origin/destination tables, routeFilter the travel times to the vehicles of the
+    // accepted route IDs (null = all). The data is taken between two steps, so the report is consistent
+    // and SUMO is not asked again
+    public ReportGenerator startReport(Path file, Predicate<String> edgeFilter, Predicate<String> routeFilter) {
+        ReportGenerator report = new ReportGenerator(file);
+        Runnable capture = () -> report.start(new ReportData(snapshot.get(), metrics, edgeStatsSnapshot, hotspots,
+                travelTimes, edgeFilter, routeFilter));
+        runOnStepperOrNow(capture);
+        return report;
+    }
+    // vehicle count and mean speed over time, safe to query from any thread
+    public MetricStore getMetrics() {
+        return metrics;
+    }
+    // the worst congested edges of the hotspot window, worst first, safe to call from any thread
+    public List<Hotspot> getHotspots() {
+        return hotspots;
+    }
+    // hotspot window of buckets * bucketSeconds simulated seconds, keeping the count worst edges.
+    // Starts over with empty windows
+    public void setHotspotWindow(double bucketSeconds, int buckets, int count) {
+        hotspotBucketSeconds = Math.max(0.1, bucketSeconds);
+        hotspotBuckets = Math.max(1, buckets);
+        hotspotCount = Math.max(1, count);
+        runOnStepper(() -> {
+            if (edgeStats == null) {return;}
+            edgeStats.setHotspotDetector(new HotspotDetector(network, hotspotBucketSeconds, hotspotBuckets, hotspotCount));
+            hotspots = List.of();
+        });
+    }
+    // travel time distribution of all arrived vehicles so far, a copy that is safe to keep
+    public TravelTimeHistogram getTravelTimes() {
+        return travelTimes.overall();
+    }
+    // travel time distributions per route ID
+    public Map<String, TravelTimeHistogram> getTravelTimesByRoute() {
+        return travelTimes.byRoute();
+    }
+    // routes that had arrived vehicles, for choosing the vehicles of a report; safe to call from any thread
+    public List<String> getTravelTimeRouteIDs() {
+        return travelTimes.routeIDs();
+    }
+    // travel time distributions per "originEdge->destinationEdge"
+    public Map<String, TravelTimeHistogram> getTravelTimesByOD() {
+        return travelTimes.byOD();
+    }
+    // latest published state, safe to call from any thread
+    public WorldSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+    // vehicles added, moved and removed since snapshot version sinceVersion, safe to call from any thread.
+    // null when that version is too old (or unknown), then resync from getSnapshot()
+    public VehicleDelta getVehicleDelta(long sinceVersion) {
+        long current = snapshot.get().getVersion();
+        if (sinceVersion >= current) {
+            return new VehicleDelta(current, current, 0, 0, new String[0], new double[0], new double[0], new double[0], new int[0], new String[0]);
+        }
+        if (sinceVersion < 0 || current - sinceVersion > DELTA_RING) {return null;}
+        List<VehicleDelta> steps = new ArrayList<>((int)(current - sinceVersion));
+        for (long v = sinceVersion + 1; v <= current; v++) {
+            VehicleDelta d = deltas.get((int)(v % DELTA_RING));
+            if (d == null || d.getToVersion() != v) {return null;} // overwritten by a newer step meanwhile
+            steps.add(d);
+        }
+        return VehicleDelta.merge(steps);
+    }
+    // queue work that has to run on the stepper thread, it runs right after the next time step
+    protected void runOnStepper(Runnable task) {
+        stepperTasks.add(task);
+    }
+    // same, but run right away once the simulation is closed: no step would run it any more, and
+    // nothing changes the state then
+    private void runOnStepperOrNow(Runnable task) {
+        if (isClosed()) {task.run();}
+        else {runOnStepper(task);}
+    }
+    private void runStepperTasks() {
+        Runnable task;
+        while ((task = stepperTasks.poll()) != null) {task.run();}
+    }
+    // copy the current vehicle and traffic light state into a new snapshot (stepper thread only)
+    private void publishSnapshot() {
+        if (tlIDs.length != TrafficLightList.size()) {
+            tlIDs = TrafficLightList.keySet().toArray(new String[0]);
+            tlFromLanes = new String[tlIDs.length][];
+            tlToLanes = new String[tlIDs.length][];
+            for (int i = 0; i < tlIDs.length; i++) {
+                TrafficLightWrapper tl = TrafficLightList.get(tlIDs[i]);
+                tlFromLanes[i] = tl.from.toArray(new String[0]);
+                tlToLanes[i] = tl.to.toArray(new String[0]);
+            }
+        }
+        String[] tlStates = new String[tlIDs.length];
+        int[] tlPhases = new int[tlIDs.length];
+        for (int i = 0; i < tlIDs.length; i++) {
+            TrafficLightWrapper tl = TrafficLightList.get(tlIDs[i]);
+            tlStates[i] = tl.lightDef;
+            tlPhases[i] = tl.currentPhase;
+        }
+
+        VehicleStore store = VehicleList;
+        int capacity = store.size();
+        String[] ids = new String[capacity];
+        double[] x = new double[capacity];
+        double[] y = new double[capacity];
+        double[] angle = new double[capacity];
+        double[] speed = new double[capacity];
+        int[] color = new int[capacity];
+        String[] typeIDs = new String[capacity];
+        String[] routeIDs = new String[capacity];
+        double[] length = new double[capacity];
+        int n = 0;
+        // changes against the previous snapshot, added vehicles first
+        if (addedSlots.length < store.highWater()) {
+            addedSlots = new int[store.highWater() * 2];
+            movedSlots = new int[store.highWater() * 2];
+        }
+        int added = 0;
+        int moved = 0;
+        for (int slot = 0; slot < store.highWater(); slot++) {
+            if (!store.hasPosition[slot]) {continue;} // free slot or no subscription result yet
+            if (!store.published[slot]) {addedSlots[added++] = slot;}
+            else if (store.pubX[slot] != store.x[slot] || store.pubY[slot] != store.y[slot]
+                    || store.pubAngle[slot] != store.angle[slot] || store.pubRgba[slot] != store.rgba[slot]) {movedSlots[moved++] = slot;}
+            ids[n] = store.ids[slot];
+            x[n] = store.x[slot];
+            y[n] = store.y[slot];
+            angle[n] = store.angle[slot];
+            speed[n] = store.speed[slot];
+            color[n] = store.rgba[slot];
+            typeIDs[n] = store.typeIDs[slot];
+            routeIDs[n] = store.routeIDs[slot];
+            length[n] = store.length[slot];
+            n++;
+        }
+        long version = snapshot.get().getVersion() + 1;
+        WorldSnapshot s = new WorldSnapshot(version, simTime, n, ids, x, y, angle, speed, color, typeIDs, routeIDs, length,
+                tlIDs, tlStates, tlPhases, tlFromLanes, tlToLanes);
+        publish(buildDelta(store, version, added, moved), s);
+        metrics.record(MetricStore.VEHICLES, simTime, n);
+        metrics.record(MetricStore.MEAN_SPEED, simTime, s.getMeanSpeed());
+    }
+    // the delta goes into the ring before its snapshot is visible, so getVehicleDelta finds every published version
+    void publish(VehicleDelta delta, WorldSnapshot s) {
+        deltas.set((int)(s.getVersion() % DELTA_RING), delta);
+        snapshot.set(s);
+    }
+    // collect the changed slots into a VehicleDelta and remember what was published (stepper thread only)
+    // the first added entries of addedSlots and moved entries of movedSlots
+    private VehicleDelta buildDelta(VehicleStore store, long version, int added, int moved) {
+        int n = added + moved;
+        String[] ids = new String[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] angle = new double[n];
+        int[] color = new int[n];
+        for (int i = 0; i < n; i++) {
+            int slot = i < added ? addedSlots[i] : movedSlots[i - added];
+            ids[i] = store.ids[slot];
+            x[i] = store.pubX[slot] = store.x[slot];
+            y[i] = store.pubY[slot] = store.y[slot];
+            angle[i] = store.pubAngle[slot] = store.angle[slot];
+            color[i] = store.pubRgba[slot] = store.rgba[slot];
+            store.published[slot] = true;
+        }
+        String[] removed = store.removedSincePublish.toArray(new String[0]);
+        store.removedSincePublish.clear();
+        return new VehicleDelta(version - 1, version, added, moved, ids, x, y, angle, color, removed);
     }
 //===== TRAFFIC LIGHT STUFF ===============================
 //===== GETTER ============================================
@@ -175,15 +637,17 @@ public class SimulationWrapper implements Observer {
     }
     // get phase number of a traffic light
     public int getTLPhaseNum(String inputID) {
-        TrafficLightWrapper x = TrafficLightList.get(inputID);
-        int phaseNum = x.getPhaseNum(this, 0);
-        return phaseNum;
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfTL(inputID);
+        if (i < 0) {return -1;}
+        return s.getTLPhase(i);
     }
     // get phase definition of a traffic light (current light state)
     public String getTLPhaseDef(String inputID) {
-        TrafficLightWrapper x = TrafficLightList.get(inputID);
-        String phaseDef = x.getPhaseDef(0);
-        return phaseDef;
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfTL(inputID);
+        if (i < 0) {return null;}
+        return s.getTLState(i);
     }
     public int getTLControlledLinksNum(String inputID) {
         TrafficLightWrapper x = TrafficLightList.get(inputID);
@@ -191,69 +655,119 @@ public class SimulationWrapper implements Observer {
         return linkNum;
     }
     public List<String> getTLDefFromTo(String inputID, int index) {
-        TrafficLightWrapper x = TrafficLightList.get(inputID);
-        if (index < x.controlledLinksNum) {
-            List<String> defFromTo = x.getDefFromTo(index, 0);
-            return defFromTo;
-        }
-        else {return null;}
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfTL(inputID);
+        if (i < 0 || index >= s.getTLLinkCount(i) || s.getTLState(i) == null) {return null;}
+        List<String> defFromTo = new ArrayList<String>();
+        defFromTo.add("" + s.getTLState(i).charAt(index));
+        defFromTo.add(s.getTLFromLane(i, index));
+        defFromTo.add(s.getTLToLane(i, index));
+        return defFromTo;
     }
     public void getTLControlledLinks(String inputID) {
         TrafficLightWrapper x = TrafficLightList.get(inputID);
         x.getControlledLinks(this, 0);
     }
 //===== SETTER ============================================
+    // set a fixed light state until changed again, replaces any timed override of this light
     public void setTLPhaseDef(String inputID, String inputDef) {
         TrafficLightWrapper x = TrafficLightList.get(inputID);
-        x.setPhaseDef(this, inputDef);
+        if (x == null) {System.out.println("No traffic light " + inputID); return;}
+        runOnStepper(() -> {
+            tlScheduler.cancel(inputID);
+            x.setPhaseDef(this, inputDef);
+        });
     }
+    // set a light state for inputTime simulated seconds, then go back to the original program (non-blocking)
     public void setTLPhaseDefWithPhaseTime(String inputID, String inputDef, int inputTime) {
+        scheduleTLOverride(inputID, inputDef, 0, inputTime);
+    }
+    // set a light state from startDelay to startDelay + duration simulated seconds from now (non-blocking)
+    public void scheduleTLOverride(String inputID, String inputDef, double startDelay, double duration) {
+        if (!TrafficLightList.containsKey(inputID)) {System.out.println("No traffic light " + inputID); return;}
+        runOnStepper(() -> tlScheduler.schedule(inputID, inputDef, simTime + startDelay, simTime + startDelay + duration));
+    }
+    // drop a pending or running timed override, a running one gives the light its program back
+    public void cancelTLOverride(String inputID) {
         TrafficLightWrapper x = TrafficLightList.get(inputID);
-        x.setPhaseDefWithPhaseTime(this, inputDef, inputTime);
+        if (x == null) {System.out.println("No traffic light " + inputID); return;}
+        runOnStepper(() -> {
+            if (tlScheduler.cancel(inputID)) {x.setPhaseDefOrigin(this);}
+        });
     }
     public void setTLPhaseDefOrigin(String inputID) {
         TrafficLightWrapper x = TrafficLightList.get(inputID);
-        x.setPhaseDefOrigin(this);
+        if (x == null) {System.out.println("No traffic light " + inputID); return;}
+        runOnStepper(() -> {
+            tlScheduler.cancel(inputID);
+            x.setPhaseDefOrigin(this);
+        });
     }
     public void setTLPhaseNext(String inputID) {
         TrafficLightWrapper x = TrafficLightList.get(inputID);
-        x.setPhaseNext(this);
+        if (x == null) {System.out.println("No traffic light " + inputID); return;}
+        runOnStepper(() -> x.setPhaseNext(this));
+    }
+    // advance every traffic light in one pass on the stepper, one set call per light and no getters
+    public void setTLPhaseNextAll() {
+        runOnStepper(() -> {
+            for (TrafficLightWrapper x : TrafficLightList.values()) {x.setPhaseNext(this);}
+        });
     }
 //===== VEHICLE STUFF =====================================
 //===== GETTER ============================================
-    // get position of the vehicle
+    // get position of the vehicle, null if the vehicle is not in the last step
     public SumoPosition2D getVehiclePosition(String ID) {
-        VehicleWrapper x = VehicleList.get(ID);
-        SumoPosition2D VehiclePosition = x.getPosition(0);
-        return VehiclePosition;
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfVehicle(ID);
+        if (i < 0) {return null;}
+        return new SumoPosition2D(s.getVehicleX(i), s.getVehicleY(i));
     }
     // get Vehicle speed
     public double getVehicleSpeed(String inputID) {
-        VehicleWrapper x = VehicleList.get(inputID);
-        double vehicleSpeed = x.getSpeed(0);
-        return vehicleSpeed;
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfVehicle(inputID);
+        if (i < 0) {return -1;}
+        return s.getVehicleSpeed(i);
     }
     // get Vehicle's color
     public SumoColor getVehicleColor(String inputID) {
-        VehicleWrapper x = VehicleList.get(inputID);
-        SumoColor vehicleColor = x.getColor(0);
-        return vehicleColor;
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfVehicle(inputID);
+        if (i < 0) {return null;}
+        int c = s.getVehicleColor(i);
+        return new SumoColor(c >>> 24, (c >>> 16) & 0xFF, (c >>> 8) & 0xFF, c & 0xFF);
+    }
+    // get Vehicle's route ID
+    public String getVehicleRouteID(String inputID) {
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfVehicle(inputID);
+        if (i < 0) {return null;}
+        return s.getVehicleRouteID(i);
+    }
+    // get Vehicle's type ID
+    public String getVehicleTypeID(String inputID) {
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfVehicle(inputID);
+        if (i < 0) {return null;}
+        return s.getVehicleTypeID(i);
     }
     public double getVehicleAngle(String inputID) {
-        VehicleWrapper x = VehicleList.get(inputID);
-        double vehicleAngle = x.getAngle(0);
-        return vehicleAngle;
+        WorldSnapshot s = snapshot.get();
+        int i = s.indexOfVehicle(inputID);
+        if (i < 0) {return 0;}
+        return s.getVehicleAngle(i);
     }
     // get Vehicle's ID list
     public List<String> getVehicleIDsList() {
-        List<String> returnVehicleList = new ArrayList<>(VehicleList.keySet());
+        WorldSnapshot s = snapshot.get();
+        List<String> returnVehicleList = new ArrayList<>(s.getVehicleCount());
+        for (int i = 0; i < s.getVehicleCount(); i++) {returnVehicleList.add(s.getVehicleID(i));}
         return returnVehicleList;
     }
     // get average speed of all vehicle
     public double getVehicleAverageSpeed(int po) {
-        double result = 0;
-        for (VehicleWrapper x : VehicleList.values()) {result += x.speed;}
-        result /= VehicleList.size();
+        double result = snapshot.get().getMeanSpeed(); // summed once when the snapshot was built
         if (po == 1) {System.out.println("Average speed is " + result);}
         return result;
     }
@@ -265,40 +779,58 @@ public class SimulationWrapper implements Observer {
 //===== SETTER ============================================
     // set Vehicle's speed
     public void setVehicleSpeed(String inputID, double inputSpeed) {
-        VehicleWrapper x = VehicleList.get(inputID);
-        x.setSpeed(this, inputSpeed, 0);
+        if (snapshot.get().indexOfVehicle(inputID) < 0) {System.out.println("No vehicle " + inputID); return;}
+        VehicleWrapper.setSpeed(this, inputID, inputSpeed, 0);
     }
     // set Vehicle's color
     public void setVehicleColor(String inputID, int r, int b, int g, int a) {
-        VehicleWrapper x = VehicleList.get(inputID);
-        x.setColor(this, r, g, b, a);
+        if (snapshot.get().indexOfVehicle(inputID) < 0) {System.out.println("No vehicle " + inputID); return;}
+        VehicleWrapper.setColor(this, inputID, r, g, b, a); // new colour comes back through the subscription
     }
 //===== ADDER =============================================
     // add a vehicle into the 1st route in RouteList
     public void addVehicleBasic(String inputID) {
-        try {
-            RouteWrapper.updateRouteIDs(this);
-            if (RouteList.size() == 0) {System.out.println("No available route");}
-            else {VehicleWrapper.addVehicle(this, inputID, RouteList.get(0));}
-        }
-        catch (Exception e) {System.out.println("hmm");}
+        List<String> routes = RouteWrapper.getRouteIDs(this);
+        if (routes.size() == 0) {System.out.println("No available route");}
+        else {addVehicles(List.of(new VehicleSpec(inputID, routes.get(0))));}
     }
     //add a vehicle into selected route
     public void addVehicleNormal(String inputID, int inputRoute) {
-        try {
-            RouteWrapper.updateRouteIDs(this);
-            if (RouteList.size() == 0 || inputRoute >= RouteList.size()) {System.out.println("Invalid injection");}
-            else {VehicleWrapper.addVehicle(this, inputID, RouteList.get(inputRoute));}
-        }
-        catch (Exception e) {System.out.println("Error when adding vehicle normally");}
+        List<String> routes = RouteWrapper.getRouteIDs(this);
+        if (routes.size() == 0 || inputRoute >= routes.size()) {System.out.println("Invalid injection");}
+        else {addVehicles(List.of(new VehicleSpec(inputID, routes.get(inputRoute))));}
     }
     public void addVehicleNormalx(String inputID, int inputRoute) {
-        try {
-            RouteWrapper.updateRouteIDs(this);
-            if (RouteList.size() == 0) {System.out.println("No available route");}
-            else {VehicleWrapper.addVehicle(this, inputID, "r_1");}
+        List<String> routes = RouteWrapper.getRouteIDs(this);
+        if (routes.size() == 0) {System.out.println("No available route");}
+        else {addVehicles(List.of(new VehicleSpec(inputID, "r_1")));}
+    }
+    // Inject many vehicles at once without blocking the caller. The vehicles are queued for the stepper
+    // thread, which sends them after each step: at most maxDeparturesPerStep per step and only for
+    // INJECT_BUDGET_NANOS, since every Vehicle.add is its own TraCI round trip. Each departs in the step
+    // after it was sent, so a large injection spreads over as many steps as it needs and no step stalls.
+    public void addVehicles(List<VehicleSpec> specs) {
+        List<VehicleSpec> copy = List.copyOf(specs);
+        runOnStepper(() -> pendingInjections.addAll(copy));
+    }
+    // send this step's share of the queued injections (stepper thread only)
+    private void sendInjections() {
+        if (pendingInjections.isEmpty()) {return;}
+        long deadline = System.nanoTime() + INJECT_BUDGET_NANOS;
+        double depart = simTime + stepLength;
+        int sent = 0;
+        int failed = 0;
+        while (!pendingInjections.isEmpty() && sent < maxDeparturesPerStep && System.nanoTime() < deadline) {
+            VehicleSpec spec = pendingInjections.poll();
+            String type = spec.typeID() == null ? "DEFAULT_VEHTYPE" : spec.typeID();
+            if (!VehicleWrapper.addVehicle(this, spec.id(), spec.routeID(), type, depart)) {failed++;}
+            sent++;
         }
-        catch (Exception e) {System.out.println("Error when adding vehicle normally");}
+        if (failed > 0) {System.out.println(failed + " of " + sent + " vehicles could not be added");}
+    }
+    // how many injected vehicles may be sent, and so depart, in the same step
+    public void setMaxDeparturesPerStep(int input) {
+        maxDeparturesPerStep = Math.max(1, input);
     }
     public void testRoute() {
         try {
@@ -314,9 +846,20 @@ public class SimulationWrapper implements Observer {
 //===== ROUTE STUFF ========================================
     //get number of available route
     public int getRouteNum(int po) {
-        RouteWrapper.updateRouteIDs(this);
-        int routeNum = RouteList.size();
+        int routeNum = RouteWrapper.getRouteIDs(this).size();
         if (po == 1) {System.out.println(routeNum);}
         return routeNum;
     }
+    // get available route IDs (cached)
+    public List<String> getRouteIDsList() {
+        return RouteWrapper.getRouteIDs(this);
+    }
+    // changes whenever the cached route list is reloaded
+    public int getRouteVersion() {
+        return routeVersion;
+    }
+    // add a route from a list of edge IDs
+    public boolean addRoute(String inputID, List<String> inputEdges) {
+        return RouteWrapper.addRoute(this, inputID, inputEdges);
+    }
 }
@@ -0,0 +1,60 @@
+package wrapper;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Paces simulation steps against absolute wall-clock deadlines.
+ * Step k is due at start + k * period, so time spent in TraCI and in the observer is taken
+ * out of the wait instead of being added on top of it, and the rate does not drift as the
+ * network fills. When a step is late the lag is reported; if it grows beyond MAX_LAG_STEPS
+ * periods the backlog is dropped instead of running a burst of catch-up steps.
+ */
+class StepClock {
+    private static final int MAX_LAG_STEPS = 5;
+
+    private volatile long periodNanos; // 0 = run as fast as possible
+    private long nextDeadline = 0; // System.nanoTime() of the next step, 0 = not started
+    private volatile long lagNanos = 0;
+    private volatile long overruns = 0;
+
+    StepClock(long inputPeriodNanos) {
+        periodNanos = inputPeriodNanos;
+    }
+    //=================GETTER================================
+    long getPeriodNanos() {return periodNanos;}
+    // how late the last step started, 0 if it was on time
+    long getLagNanos() {return lagNanos;}
+    // number of steps that started after their deadline
+    long getOverruns() {return overruns;}
+    boolean isBehind() {return periodNanos > 0 && lagNanos > periodNanos;}
+    //=================SETTER================================
+    void setPeriodNanos(long inputPeriodNanos) {
+        periodNanos = Math.max(0, inputPeriodNanos);
+    }
+    // block until the next step is due (stepper thread only)
+    void awaitNextStep() {
+        long period = periodNanos;
+        long now = System.nanoTime();
+        if (period == 0) {
+            nextDeadline = 0;
+            lagNanos = 0;
+            return;
+        }
+        if (nextDeadline == 0) {nextDeadline = now;}
+        else {nextDeadline += period;}
+
+        long wait = nextDeadline - now;
+        if (wait >= 0) {
+            lagNanos = 0;
+            while (wait > 0) {
+                LockSupport.parkNanos(wait);
+                wait = nextDeadline - System.nanoTime();
+            }
+        }
+        else {
+            lagNanos = -wait;
+            overruns++;
+            if (-wait > MAX_LAG_STEPS * period) {nextDeadline = now;} // give up on the backlog
+        }
+    }
+}
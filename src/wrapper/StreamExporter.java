@@ -0,0 +1,368 @@
+package wrapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Streams vehicle trajectories and edge statistics to disk while the simulation runs.
+ * The Sumo-Stepper thread copies the vehicle columns of every step into a pooled ExportBatch and queues it;
+ * a writer thread encodes the batches into a large direct buffer and writes it to a FileChannel. Batches
+ * go back to the pool after writing, so a run of any length allocates nothing per row, and when the writer
+ * falls behind the stepper waits for a free batch instead of buffering without limit.
+ * Two formats:
+ *   CSV       vehicles: time,vehicle,x,y,speed,angle,edge
+ *             edges:    window_start,window_end,edge,mean_vehicles,density,mean_speed,occupancy
+ *   COLUMNAR  big endian blocks, one per step (vehicles) or window (edges), ids dictionary coded:
+ *             vehicles: magic "SVT1", version, then per step
+ *                       rows, time, new vehicle ids, vehicle[], x[], y[], speed[], angle[] (float), new edge ids, edge[]
+ *             edges:    magic "SES1", version, then per window
+ *                       start, end, edge count, new edge ids, mean_vehicles[], density[], mean_speed[], occupancy[] (float)
+ *             "new ids" is a count followed by (length, UTF-8 bytes) for ids first seen in that block;
+ *             an id's number is its position in the order of appearance, -1 means none.
+ */
+public class StreamExporter {
+    public enum Format {CSV, COLUMNAR}
+
+    private static final int POOL_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int VEHICLE_MAGIC = 0x53565431; // "SVT1"
+    private static final int EDGE_MAGIC = 0x53455331; // "SES1"
+    private static final int VERSION = 1;
+    private static final Object END = new Object();
+
+    private final Format format;
+    private final Path vehicleFile;
+    private final Path edgeFile;
+    private final FileChannel vehicleChannel;
+    private final FileChannel edgeChannel;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final BlockingQueue<ExportBatch> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(POOL_SIZE + 4);
+    private final Thread writer;
+    // columnar dictionaries, writer thread only
+    private final HashMap<String, Integer> vehicleIDs = new HashMap<>();
+    private final HashMap<String, Integer> edgeIDs = new HashMap<>();
+    private final HashMap<String, Integer> windowEdgeIDs = new HashMap<>();
+    // progress, read from any thread
+    private volatile long rows = 0;
+    private volatile long bytes = 0;
+    private volatile boolean finished = false;
+    private volatile boolean cancelled = false;
+    private volatile String error = null;
+
+    // rows of one step, columns grow to the largest step seen and are reused
+    static class ExportBatch {
+        double time;
+        int count = 0;
+        String[] ids = new String[256];
+        double[] x = new double[256];
+        double[] y = new double[256];
+        double[] speed = new double[256];
+        double[] angle = new double[256];
+        String[] edges = new String[256];
+
+        void ensure(int n) {
+            if (ids.length >= n) {return;}
+            int capacity = Math.max(n, ids.length * 2);
+            ids = new String[capacity];
+            x = new double[capacity];
+            y = new double[capacity];
+            speed = new double[capacity];
+            angle = new double[capacity];
+            edges = new String[capacity];
+        }
+    }
+
+    // creates (or truncates) both files and starts the writer thread
+    public StreamExporter(Path vehicleFile, Path edgeFile, Format format) throws IOException {
+        this.format = format;
+        this.vehicleFile = vehicleFile;
+        this.edgeFile = edgeFile;
+        vehicleChannel = FileChannel.open(vehicleFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        edgeChannel = FileChannel.open(edgeFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        for (int i = 0; i < POOL_SIZE; i++) {pool.add(new ExportBatch());}
+        writer = new Thread(this::writeLoop, "Export-Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+//===== PROGRESS ==========================================
+    public long getRowsWritten() {return rows;}
+    public long getBytesWritten() {return bytes;}
+    // true once the files are closed, after finish, cancel or an error
+    public boolean isFinished() {return finished;}
+    public boolean isCancelled() {return cancelled;}
+    // message of the I/O error that stopped the export, null if none
+    public String getError() {return error;}
+    public Path getVehicleFile() {return vehicleFile;}
+    public Path getEdgeFile() {return edgeFile;}
+//===== PRODUCER (stepper thread) =========================
+    // queue the vehicles of a step, waits while all batches are in use
+    void offerStep(VehicleStore store, double time) {
+        if (cancelled || finished) {return;}
+        ExportBatch batch = null;
+        try {
+            while (batch == null) {
+                if (cancelled || error != null) {return;}
+                batch = pool.poll(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        batch.time = time;
+        batch.ensure(store.size());
+        int n = 0;
+        for (int slot = 0; slot < store.highWater(); slot++) {
+            if (!store.hasPosition[slot]) {continue;}
+            batch.ids[n] = store.ids[slot];
+            batch.x[n] = store.x[slot];
+            batch.y[n] = store.y[slot];
+            batch.speed[n] = store.speed[slot];
+            batch.angle[n] = store.angle[slot];
+            batch.edges[n] = store.lastEdge[slot];
+            n++;
+        }
+        batch.count = n;
+        put(batch);
+    }
+    // queue a completed statistics window, the snapshot is immutable so it is queued as it is
+    void offerEdges(EdgeStatsSnapshot stats) {
+        if (cancelled || finished || stats.getVersion() == 0) {return;}
+        put(stats);
+    }
+    // write what is queued, then close the files; nothing to do once they are closed
+    void finish() {
+        if (!finished) {put(END);}
+    }
+    // stop as soon as possible and delete the files
+    public void cancel() {
+        cancelled = true;
+        queue.offer(END); // wakes the writer, which closes and deletes
+    }
+    private void put(Object item) {
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled || finished || error != null) {return;} // writer gone, nobody takes it
+            }
+        } catch (InterruptedException e) {Thread.currentThread().interrupt();}
+    }
+//===== WRITER THREAD =====================================
+    private void writeLoop() {
+        try {
+            writeHeaders();
+            while (true) {
+                Object item = queue.take();
+                if (item == END || cancelled) {break;}
+                if (item instanceof ExportBatch) {
+                    ExportBatch batch = (ExportBatch) item;
+                    if (format == Format.CSV) {writeVehiclesCsv(batch);}
+                    else {writeVehiclesColumnar(batch);}
+                    rows += batch.count;
+                    pool.offer(batch);
+                }
+                else if (item instanceof EdgeStatsSnapshot) {
+                    EdgeStatsSnapshot stats = (EdgeStatsSnapshot) item;
+                    if (format == Format.CSV) {writeEdgesCsv(stats);}
+                    else {writeEdgesColumnar(stats);}
+                }
+            }
+            if (!cancelled) {flush(vehicleChannel);}
+        } catch (Exception e) {
+            error = e.getMessage() == null ? e.toString() : e.getMessage();
+            System.out.println("Export failed: " + error);
+        } finally {
+            try {
+                vehicleChannel.close();
+                edgeChannel.close();
+                if (cancelled) {
+                    Files.deleteIfExists(vehicleFile);
+                    Files.deleteIfExists(edgeFile);
+                }
+            } catch (IOException e) {System.out.println("Unable to close export files: " + e.getMessage());}
+            finished = true;
+        }
+    }
+    private void writeHeaders() throws IOException {
+        if (format == Format.CSV) {
+            putUtf8("time,vehicle,x,y,speed,angle,edge\n");
+            flush(vehicleChannel);
+            putUtf8("window_start,window_end,edge,mean_vehicles,density,mean_speed,occupancy\n");
+            flush(edgeChannel);
+        } else {
+            buf.putInt(VEHICLE_MAGIC).putInt(VERSION);
+            flush(vehicleChannel);
+            buf.putInt(EDGE_MAGIC).putInt(VERSION);
+            flush(edgeChannel);
+        }
+    }
+    private void writeVehiclesCsv(ExportBatch b) throws IOException {
+        for (int i = 0; i < b.count; i++) {
+            String edge = b.edges[i];
+            ensure(vehicleChannel, 160 + 3 * b.ids[i].length() + (edge == null ? 0 : 3 * edge.length()));
+            putNumber(b.time, 2); buf.put((byte) ',');
+            putUtf8(b.ids[i]); buf.put((byte) ',');
+            putNumber(b.x[i], 2); buf.put((byte) ',');
+            putNumber(b.y[i], 2); buf.put((byte) ',');
+            putNumber(b.speed[i], 2); buf.put((byte) ',');
+            putNumber(b.angle[i], 1); buf.put((byte) ',');
+            if (edge != null) {putUtf8(edge);}
+            buf.put((byte) '\n');
+        }
+        flushIfFull(vehicleChannel);
+    }
+    private void writeEdgesCsv(EdgeStatsSnapshot s) throws IOException {
+        flush(vehicleChannel); // the buffer is shared, empty it before switching files
+        for (int i = 0; i < s.getEdgeCount(); i++) {
+            ensure(edgeChannel, 160 + 3 * s.getEdgeID(i).length());
+            putNumber(s.getWindowStart(), 1); buf.put((byte) ',');
+            putNumber(s.getWindowEnd(), 1); buf.put((byte) ',');
+            putUtf8(s.getEdgeID(i)); buf.put((byte) ',');
+            putNumber(s.getMeanVehicles(i), 3); buf.put((byte) ',');
+            putNumber(s.getDensity(i), 2); buf.put((byte) ',');
+            putNumber(s.getMeanSpeed(i), 2); buf.put((byte) ',');
+            putNumber(s.getOccupancy(i), 4);
+            buf.put((byte) '\n');
+        }
+        flush(edgeChannel);
+    }
+    private void writeVehiclesColumnar(ExportBatch b) throws IOException {
+        ensure(vehicleChannel, 16);
+        buf.putInt(b.count).putDouble(b.time);
+        writeNewIDs(vehicleChannel, vehicleIDs, b.ids, b.count);
+        for (int i = 0; i < b.count; i++) {putInt(vehicleChannel, vehicleIDs.get(b.ids[i]));}
+        for (int i = 0; i < b.count; i++) {putFloat(vehicleChannel, b.x[i]);}
+        for (int i = 0; i < b.count; i++) {putFloat(vehicleChannel, b.y[i]);}
+        for (int i = 0; i < b.count; i++) {putFloat(vehicleChannel, b.speed[i]);}
+        for (int i = 0; i < b.count; i++) {putFloat(vehicleChannel, b.angle[i]);}
+        writeNewIDs(vehicleChannel, edgeIDs, b.edges, b.count);
+        for (int i = 0; i < b.count; i++) {putInt(vehicleChannel, b.edges[i] == null ? -1 : edgeIDs.get(b.edges[i]));}
+        flushIfFull(vehicleChannel);
+    }
+    private void writeEdgesColumnar(EdgeStatsSnapshot s) throws IOException {
+        flush(vehicleChannel);
+        int n = s.getEdgeCount();
+        ensure(edgeChannel, 20);
+        buf.putDouble(s.getWindowStart()).putDouble(s.getWindowEnd()).putInt(n);
+        // edges are always listed in network order, so only the first window carries their ids
+        ensure(edgeChannel, 4);
+        buf.putInt(windowEdgeIDs.isEmpty() ? n : 0);
+        for (int i = 0; i < n && windowEdgeIDs.size() < n; i++) {
+            windowEdgeIDs.put(s.getEdgeID(i), i);
+            putString(edgeChannel, s.getEdgeID(i));
+        }
+        for (int i = 0; i < n; i++) {putFloat(edgeChannel, s.getMeanVehicles(i));}
+        for (int i = 0; i < n; i++) {putFloat(edgeChannel, s.getDensity(i));}
+        for (int i = 0; i < n; i++) {putFloat(edgeChannel, s.getMeanSpeed(i));}
+        for (int i = 0; i < n; i++) {putFloat(edgeChannel, s.getOccupancy(i));}
+        flush(edgeChannel);
+    }
+    // count of ids not in the dictionary yet, then each of them; adds them to the dictionary
+    private void writeNewIDs(FileChannel ch, HashMap<String, Integer> dictionary, String[] ids, int n) throws IOException {
+        int fresh = 0;
+        for (int i = 0; i < n; i++) {
+            if (ids[i] != null && !dictionary.containsKey(ids[i])) {
+                dictionary.put(ids[i], -1 - fresh); // numbered below, negative marks "new in this block"
+                fresh++;
+            }
+        }
+        putInt(ch, fresh);
+        if (fresh == 0) {return;}
+        int base = dictionary.size() - fresh;
+        for (int i = 0; i < n; i++) {
+            Integer code = ids[i] == null ? null : dictionary.get(ids[i]);
+            if (code == null || code >= 0) {continue;}
+            dictionary.put(ids[i], base - 1 - code);
+            putString(ch, ids[i]);
+        }
+    }
+//===== ENCODING ==========================================
+    private void ensure(FileChannel ch, int room) throws IOException {
+        if (buf.remaining() < room) {flush(ch);}
+    }
+    private void flushIfFull(FileChannel ch) throws IOException {
+        if (buf.remaining() < BUFFER_SIZE / 4) {flush(ch);}
+    }
+    private void flush(FileChannel ch) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {bytes += ch.write(buf);}
+        buf.clear();
+    }
+    private void putInt(FileChannel ch, int value) throws IOException {
+        ensure(ch, 4);
+        buf.putInt(value);
+    }
+    private void putFloat(FileChannel ch, double value) throws IOException {
+        ensure(ch, 4);
+        buf.putFloat((float) value);
+    }
+    private void putString(FileChannel ch, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8); // once per id, not per row
+        ensure(ch, 4 + b.length);
+        buf.putInt(b.length).put(b);
+    }
+    // ids and headers as UTF-8 by code point, at most 3 bytes per char (a surrogate pair takes 4 for both);
+    // a lone surrogate is written as '?' like String.getBytes does
+    private void putUtf8(String s) {
+        for (int i = 0; i < s.length(); ) {
+            int c = s.codePointAt(i);
+            i += Character.charCount(c);
+            if (c < 0x80) {buf.put((byte) c);}
+            else if (c < 0x800) {
+                buf.put((byte) (0xC0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                buf.put((byte) '?');
+            } else if (c < 0x10000) {
+                buf.put((byte) (0xE0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buf.put((byte) (0xF0 | (c >> 18)));
+                buf.put((byte) (0x80 | ((c >> 12) & 0x3F)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+    private static final long[] POW10 = {1, 10, 100, 1000, 10000};
+    // fixed point decimal without going through String
+    private void putNumber(double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e15) {
+            putUtf8(Double.toString(value));
+            return;
+        }
+        long scaled = Math.round(value * POW10[decimals]);
+        if (scaled < 0) {
+            buf.put((byte) '-');
+            scaled = -scaled;
+        }
+        long whole = scaled / POW10[decimals];
+        long fraction = scaled % POW10[decimals];
+        putDigits(whole, 1);
+        if (decimals > 0) {
+            buf.put((byte) '.');
+            putDigits(fraction, decimals);
+        }
+    }
+    // value with at least minDigits digits (zero padded)
+    private void putDigits(long value, int minDigits) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {digits++;}
+        for (int i = digits; i < minDigits; i++) {buf.put((byte) '0');}
+        int pos = buf.position() + digits;
+        for (int i = 1; i <= digits; i++) {
+            buf.put(pos - i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buf.position(pos);
+    }
+}
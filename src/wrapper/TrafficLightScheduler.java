@@ -0,0 +1,76 @@
+package wrapper;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/*
+ * Timed traffic light overrides keyed on simulation time.
+ * An override sets a fixed red-yellow-green state from its start time and switches the light
+ * back to its original program at its end time. Pending starts and restores sit in one
+ * priority queue that the stepper checks once per Step(), so no thread ever sleeps for an
+ * override. Rules per traffic light: a newer override replaces the one still pending or
+ * running (a running state stays until the newer one starts, and the program is restored
+ * only once, at the end of the newest one), and cancelling restores the program right away
+ * if the light is currently overridden.
+ */
+class TrafficLightScheduler {
+    private static class Override {
+        final String tlID;
+        final String state;
+        final double start;
+        final double end;
+        boolean applied = false;
+        boolean cancelled = false;
+
+        Override(String tlID, String state, double start, double end) {
+            this.tlID = tlID;
+            this.state = state;
+            this.start = start;
+            this.end = end;
+        }
+        // time of the next thing this override has to do
+        double nextEventTime() {return applied ? end : start;}
+    }
+
+    private final PriorityQueue<Override> events = new PriorityQueue<>((a, b) -> Double.compare(a.nextEventTime(), b.nextEventTime()));
+    private final HashMap<String, Override> active = new HashMap<>(); // newest override per traffic light
+    private final HashSet<String> overridden = new HashSet<>(); // lights currently showing an override state
+
+    //=================SETTER================================
+    // schedule state on tlID from start until end (simulation seconds)
+    void schedule(String tlID, String state, double start, double end) {
+        Override previous = active.get(tlID);
+        if (previous != null) {previous.cancelled = true;}
+        Override next = new Override(tlID, state, start, end);
+        active.put(tlID, next);
+        events.add(next);
+    }
+    // drop the override of tlID, returns true if the light is currently overridden and needs its program back
+    boolean cancel(String tlID) {
+        Override previous = active.remove(tlID);
+        if (previous == null) {return false;}
+        previous.cancelled = true;
+        return overridden.remove(tlID);
+    }
+    // apply every start and restore that is due at simulation time now (stepper thread only)
+    void process(SimulationWrapper temp, double now) {
+        while (!events.isEmpty() && events.peek().nextEventTime() <= now) {
+            Override o = events.poll();
+            if (o.cancelled) {continue;}
+            if (!o.applied) {
+                o.applied = true;
+                overridden.add(o.tlID);
+                TrafficLightWrapper x = temp.TrafficLightList.get(o.tlID);
+                if (x != null) {x.setPhaseDef(temp, o.state);}
+                events.add(o); // wait for its end
+            }
+            else {
+                active.remove(o.tlID);
+                overridden.remove(o.tlID);
+                TrafficLightWrapper x = temp.TrafficLightList.get(o.tlID);
+                if (x != null) {x.setPhaseDefOrigin(temp);}
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ import de.tudresden.sumo.subscription.ResponseType;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 class TrafficLightWrapper {
     String ID;
@@ -24,10 +25,16 @@ class TrafficLightWrapper {
     List<String> from;
     List<String> to;
     int controlledLinksNum;
+    // tracked through the subscription, so reading them costs no round trip
+    String currentProgramID;
+    int currentPhase = -1;
+    // phase count of every program of this light, null = needs (re)loading
+    HashMap<String, Integer> phaseCounts;
     // constructor
     TrafficLightWrapper(String inputID, String startProgram, List<String> inputFrom, List<String> inputTo){
         ID = inputID;
         originProgramID = startProgram;
+        currentProgramID = startProgram;
         from = inputFrom;
         to = inputTo;
         controlledLinksNum = inputFrom.size();
@@ -39,17 +46,16 @@ class TrafficLightWrapper {
         if (po == 1) {System.out.print(" " + ID);}
         return ID;
     }
-    // get phase number
+    // get phase number (from the subscription, -1 before the first step)
     public int getPhaseNum(SimulationWrapper temp, int po) {
-        try {
-            int tlsPhase = (int)temp.conn.do_job_get(Trafficlight.getPhase(ID));
-            if (po == 1) {System.out.println(String.format("tlsPhase of %s: %d", ID, tlsPhase));}
-            return tlsPhase;
-        }
-        catch(Exception A) {
-            System.out.println("Failed to get phase number.");
-        }
-        return -1;
+        if (po == 1) {System.out.println(String.format("tlsPhase of %s: %d", ID, currentPhase));}
+        return currentPhase;
+    }
+    // get number of phases of the running program, loads the program definitions only when not cached
+    public int getPhaseCount(SimulationWrapper temp) {
+        if (phaseCounts == null || !phaseCounts.containsKey(currentProgramID)) {loadPrograms(temp);}
+        Integer count = phaseCounts.get(currentProgramID);
+        return count == null ? 0 : count;
     }
     // get phase definition (Red-Green-Yellow)
     public String getPhaseDef(int po) {
@@ -93,19 +99,6 @@ class TrafficLightWrapper {
             System.out.println("Unable to set controlled links of traffic light");
         }
         return false;
-    // set phase definition with phase time (Red-Green-Yellow with time)  
-    }
-    public boolean setPhaseDefWithPhaseTime(SimulationWrapper temp, String inputDef, double inputTime) {
-        try {               //maybe need check??
-            long roundedTime = Math.round(inputTime * temp.delay);
-            temp.conn.do_job_set(Trafficlight.setRedYellowGreenState(ID, inputDef));
-            Thread.sleep(roundedTime); 
-            temp.conn.do_job_set(Trafficlight.setProgram(ID, originProgramID));
-        }
-        catch (Exception D) {
-            System.out.println("Unable to set phase with time");
-        }
-    return false;
     }
     // set phase definition to origin (auto)
     public boolean setPhaseDefOrigin(SimulationWrapper temp) {
@@ -118,16 +111,14 @@ class TrafficLightWrapper {
         }
         return false;
     }
-    // set next phase
+    // set next phase, one set call when the program is cached
     public boolean setPhaseNext(SimulationWrapper temp) {
         try {
-            String program = (String)temp.conn.do_job_get(Trafficlight.getProgram(ID));
-            SumoTLSController TLController = (SumoTLSController) temp.conn.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(ID));
-            int phaseNumLimit = TLController.programs.get(program).phases.size();
-            System.out.println("limit is " + phaseNumLimit);
-            int currentPhaseNum = (int)temp.conn.do_job_get(Trafficlight.getPhase(ID));
-            if(currentPhaseNum < phaseNumLimit - 1) {temp.conn.do_job_set(Trafficlight.setPhase(ID, currentPhaseNum + 1));}
-            else {temp.conn.do_job_set(Trafficlight.setPhase(ID, 0));}
+            int phaseNumLimit = getPhaseCount(temp);
+            if (phaseNumLimit == 0) {return false;}
+            int nextPhase = (currentPhase + 1) % phaseNumLimit;
+            temp.conn.do_job_set(Trafficlight.setPhase(ID, nextPhase));
+            currentPhase = nextPhase; // the subscription confirms it after the next step
             return true;
         }
         catch (Exception G) {
@@ -135,6 +126,23 @@ class TrafficLightWrapper {
         }
         return false;
     }
+    // cache the phase count of every program of this light (one round trip)
+    void loadPrograms(SimulationWrapper temp) {
+        HashMap<String, Integer> counts = new HashMap<>();
+        try {
+            SumoTLSController TLController = (SumoTLSController) temp.conn.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(ID));
+            for (SumoTLSProgram program : TLController.programs.values()) {counts.put(program.subID, program.phases.size());}
+        }
+        catch (Exception H) {
+            System.out.println("Unable to load programs of " + ID);
+        }
+        phaseCounts = counts;
+    }
+    // program switch reported by the subscription, a program we have not seen invalidates the cache
+    void setCurrentProgram(String programID) {
+        currentProgramID = programID;
+        if (phaseCounts != null && !phaseCounts.containsKey(programID)) {phaseCounts = null;}
+    }
 //=================STATIC================================
     // update all traffic light IDs of simulation
     protected static void updateTrafficLightIDs(SimulationWrapper temp) {
@@ -153,11 +161,14 @@ class TrafficLightWrapper {
                     inputTo.add(link.to);
                 }
                 TrafficLightWrapper y = new TrafficLightWrapper(x, program, inputFrom, inputTo);
+                y.loadPrograms(temp);
                 temp.TrafficLightList.put(x, y);
 
                 // set up subscription for traffic light
                 VariableSubscription vs = new VariableSubscription(SubscribtionVariable.trafficlight, 0, 100000 * 60, x);
                 vs.addCommand(Constants.TL_RED_YELLOW_GREEN_STATE);
+                vs.addCommand(Constants.TL_CURRENT_PHASE);
+                vs.addCommand(Constants.TL_CURRENT_PROGRAM);
                 temp.conn.do_subscription(vs);
                 System.out.println("subscribe " + x);
             }
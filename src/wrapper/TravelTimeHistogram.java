@@ -0,0 +1,107 @@
+package wrapper;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Travel time distribution in a fixed number of logarithmic buckets.
+ * Every power of two between MIN_SECONDS and MAX_SECONDS is split into SUB_BUCKETS buckets, so a percentile
+ * is off by at most about 2% of its value and the memory does not grow with the number of vehicles.
+ * Only the Sumo-Stepper thread records; other threads may read at any time or take a snapshot() copy.
+ * Histograms with the same layout merge by adding their counts.
+ */
+public final class TravelTimeHistogram {
+    static final double MIN_SECONDS = 0.5;
+    static final int SUB_BUCKETS = 16;
+    static final int OCTAVES = 18; // up to MIN_SECONDS * 2^18, about 36 hours
+    static final double MAX_SECONDS = MIN_SECONDS * (1 << OCTAVES);
+    private static final int BUCKETS = OCTAVES * SUB_BUCKETS + 2; // + below MIN_SECONDS and above MAX_SECONDS
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long count = 0;
+    private volatile double sum = 0;
+    private volatile double min = Double.POSITIVE_INFINITY;
+    private volatile double max = 0;
+
+    TravelTimeHistogram() {}
+    //=================RECORD================================
+    // add one travel time in seconds (single writer)
+    void record(double seconds) {
+        if (seconds < 0 || Double.isNaN(seconds)) {return;}
+        int b = bucketOf(seconds);
+        counts.set(b, counts.get(b) + 1);
+        sum += seconds;
+        if (seconds < min) {min = seconds;}
+        if (seconds > max) {max = seconds;}
+        count = count + 1; // written last, readers that see the count see the bucket too
+    }
+    private static int bucketOf(double seconds) {
+        if (seconds < MIN_SECONDS) {return 0;}
+        if (seconds >= MAX_SECONDS) {return BUCKETS - 1;}
+        // octave from the binary exponent, exact even where the logarithm rounds up to the next power of two
+        double r = seconds / MIN_SECONDS; // exact, MIN_SECONDS is a power of two
+        int octave = Math.getExponent(r);
+        double fraction = r / Math.scalb(1.0, octave); // 1 <= fraction < 2
+        int sub = Math.min(SUB_BUCKETS - 1, (int)(Math.log(fraction) / Math.log(2) * SUB_BUCKETS));
+        return 1 + octave * SUB_BUCKETS + sub;
+    }
+    // lower bound of bucket b in seconds
+    private static double bucketStart(int b) {
+        if (b == 0) {return 0;}
+        return MIN_SECONDS * Math.pow(2, (double)(b - 1) / SUB_BUCKETS);
+    }
+    //=================GETTER================================
+    public long getCount() {return count;}
+    // 0 without samples
+    public double getMean() {
+        long n = count;
+        return n > 0 ? sum / n : 0;
+    }
+    public double getMin() {return count > 0 ? min : 0;}
+    public double getMax() {return max;}
+    // travel time below which a fraction p (0..1) of the vehicles arrived, 0 without samples
+    public double getPercentile(double p) {
+        long n = 0;
+        for (int b = 0; b < BUCKETS; b++) {n += counts.get(b);}
+        if (n == 0) {return 0;}
+        long rank = Math.max(1, (long)Math.ceil(Math.max(0, Math.min(1, p)) * n));
+        if (rank >= n) {return max;}
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank) {
+                // geometric middle of the bucket, but never outside the values actually recorded
+                double mid = b == BUCKETS - 1 ? max : Math.sqrt(Math.max(bucketStart(b), MIN_SECONDS / 2) * bucketStart(b + 1));
+                return Math.max(getMin(), Math.min(max, mid));
+            }
+        }
+        return max;
+    }
+    // vehicles per bucket, for drawing the distribution: bucket b covers [getBucketStart(b), getBucketStart(b + 1))
+    public int getBucketCount() {return BUCKETS;}
+    public long getBucketValue(int b) {return counts.get(b);}
+    public double getBucketStart(int b) {return b >= BUCKETS ? Double.POSITIVE_INFINITY : bucketStart(b);}
+    //=================COPY/MERGE============================
+    // independent copy that no longer changes
+    public TravelTimeHistogram snapshot() {
+        TravelTimeHistogram copy = new TravelTimeHistogram();
+        copy.add(this);
+        return copy;
+    }
+    // a new histogram holding the samples of both
+    public TravelTimeHistogram merge(TravelTimeHistogram other) {
+        TravelTimeHistogram result = snapshot();
+        result.add(other);
+        return result;
+    }
+    // add the samples of other to this one (single writer)
+    void add(TravelTimeHistogram other) {
+        long n = other.count;
+        for (int b = 0; b < BUCKETS; b++) {counts.set(b, counts.get(b) + other.counts.get(b));}
+        sum += other.sum;
+        if (n > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        count = count + n;
+    }
+}
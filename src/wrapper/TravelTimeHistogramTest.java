@@ -0,0 +1,91 @@
+package wrapper;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+Checks for TravelTimeHistogram, like MainTest run by hand: java wrapper.TravelTimeHistogramTest
+Percentiles of uniform, exponential and log-normal travel times are compared with the exact quantiles of the
+sorted samples; the error has to stay within half a bucket, 2^(1/32) - 1 = 2.2% of the value. Times below
+MIN_SECONDS and from MAX_SECONDS on have to land in the first and in the overflow bucket.
+*/
+public class TravelTimeHistogramTest {
+    private static final double[] PERCENTILES = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999};
+    private static final double MAX_ERROR = Math.pow(2, 0.5 / TravelTimeHistogram.SUB_BUCKETS) - 1 + 1e-9;
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        Random rnd = new Random(7);
+        int n = 100_000;
+        double[] uniform = new double[n], exponential = new double[n], logNormal = new double[n];
+        for (int i = 0; i < n; i++) {
+            uniform[i] = 1 + rnd.nextDouble() * 3599;
+            exponential[i] = 1 - 600 * Math.log(1 - rnd.nextDouble());
+            logNormal[i] = Math.exp(6 + rnd.nextGaussian());
+        }
+        percentiles("uniform", uniform);
+        percentiles("exponential", exponential);
+        percentiles("log-normal", logNormal);
+        outerBuckets();
+        if (failures > 0) {
+            System.out.println("TravelTimeHistogramTest: " + failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("TravelTimeHistogramTest: all checks passed");
+    }
+
+    // error of every percentile against the exact one: the sample at rank ceil(p * n)
+    private static void percentiles(String name, double[] samples) {
+        TravelTimeHistogram h = new TravelTimeHistogram();
+        for (double s : samples) {h.record(s);}
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double worst = 0;
+        double previous = 0;
+        for (double p : PERCENTILES) {
+            double exact = sorted[(int) Math.max(1, Math.ceil(p * sorted.length)) - 1];
+            double estimate = h.getPercentile(p);
+            worst = Math.max(worst, Math.abs(estimate - exact) / exact);
+            check(estimate >= previous, name + " percentiles grow with p");
+            previous = estimate;
+        }
+        System.out.printf("%-12s worst percentile error %.2f%%%n", name, worst * 100);
+        check(worst <= MAX_ERROR, name + " percentile error " + worst + " above " + MAX_ERROR);
+        check(h.getPercentile(0) == sorted[0] || Math.abs(h.getPercentile(0) - sorted[0]) / sorted[0] <= MAX_ERROR, name + " p0");
+        check(h.getPercentile(1) == sorted[sorted.length - 1], name + " p100 is the maximum");
+        check(h.getCount() == samples.length, name + " count");
+    }
+
+    // below MIN_SECONDS goes to bucket 0, MAX_SECONDS and more to the overflow bucket BUCKETS - 1
+    private static void outerBuckets() {
+        TravelTimeHistogram h = new TravelTimeHistogram();
+        int overflow = h.getBucketCount() - 1;
+        h.record(TravelTimeHistogram.MIN_SECONDS / 4);
+        h.record(TravelTimeHistogram.MAX_SECONDS);
+        h.record(TravelTimeHistogram.MAX_SECONDS * 3);
+        h.record(Double.POSITIVE_INFINITY / 2); // still infinite, has to stay in range
+        h.record(-1); // ignored
+        h.record(Double.NaN); // ignored
+        check(h.getCount() == 4, "negative and NaN times are ignored");
+        check(h.getBucketValue(0) == 1, "below MIN_SECONDS is bucket 0");
+        check(h.getBucketValue(overflow) == 3, "MAX_SECONDS and above is the overflow bucket");
+        check(h.getBucketValue(overflow - 1) == 0, "nothing below the overflow bucket");
+        check(Math.abs(h.getBucketStart(overflow) - TravelTimeHistogram.MAX_SECONDS) / TravelTimeHistogram.MAX_SECONDS < 1e-9,
+                "overflow bucket starts at MAX_SECONDS");
+        double low = h.getPercentile(0.25);
+        check(low >= h.getMin() && low < TravelTimeHistogram.MIN_SECONDS, "a percentile in bucket 0 stays in its range");
+        check(h.getPercentile(0.5) == h.getMax(), "a percentile in the overflow bucket is the maximum");
+
+        // just below MAX_SECONDS is still a regular bucket
+        TravelTimeHistogram edge = new TravelTimeHistogram();
+        edge.record(Math.nextDown(TravelTimeHistogram.MAX_SECONDS));
+        check(edge.getBucketValue(overflow) == 0 && edge.getBucketValue(overflow - 1) == 1, "last regular bucket");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAIL " + what);
+        }
+    }
+}
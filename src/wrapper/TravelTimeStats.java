@@ -0,0 +1,100 @@
+package wrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/*
+ * Travel times of arrived vehicles, overall, per route and per origin/destination edge pair.
+ * Each group is one fixed-size TravelTimeHistogram, so the memory depends on the number of routes and
+ * edge pairs in use, not on how many vehicles ran. The pairs are also kept per route, so reports can be
+ * narrowed to the vehicles of some routes. Recorded by the Sumo-Stepper thread.
+ */
+class TravelTimeStats {
+    static final String OD_SEPARATOR = "->";
+
+    private final TravelTimeHistogram overall = new TravelTimeHistogram();
+    private final Map<String, TravelTimeHistogram> byRoute = new ConcurrentHashMap<>();
+    private final Map<String, TravelTimeHistogram> byOD = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, TravelTimeHistogram>> odByRoute = new ConcurrentHashMap<>(); // route -> pairs
+
+    // one arrived vehicle; routeID, origin and destination may be null if SUMO never reported them
+    void record(double seconds, String routeID, String originEdge, String destinationEdge) {
+        overall.record(seconds);
+        if (routeID != null) {byRoute.computeIfAbsent(routeID, k -> new TravelTimeHistogram()).record(seconds);}
+        if (originEdge != null && destinationEdge != null) {
+            String od = originEdge + OD_SEPARATOR + destinationEdge;
+            byOD.computeIfAbsent(od, k -> new TravelTimeHistogram()).record(seconds);
+            if (routeID != null) {
+                odByRoute.computeIfAbsent(routeID, k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(od, k -> new TravelTimeHistogram()).record(seconds);
+            }
+        }
+    }
+    //=================GETTER================================
+    // copies, safe to call from any thread
+    TravelTimeHistogram overall() {return overall.snapshot();}
+    Map<String, TravelTimeHistogram> byRoute() {return copy(byRoute);}
+    Map<String, TravelTimeHistogram> byOD() {return copy(byOD);}
+    // routes with at least one arrived vehicle, in no order
+    List<String> routeIDs() {return new ArrayList<>(byRoute.keySet());}
+    // vehicles of the routes routeFilter accepts (null = all, also those without a known route)
+    TravelTimeHistogram overall(Predicate<String> routeFilter) {
+        if (routeFilter == null) {return overall();}
+        TravelTimeHistogram result = new TravelTimeHistogram();
+        for (Map.Entry<String, TravelTimeHistogram> e : byRoute.entrySet()) {
+            if (routeFilter.test(e.getKey())) {result.add(e.getValue());}
+        }
+        return result;
+    }
+    // copies of the n routes / edge pairs with the most vehicles, most first; only those n are copied, so
+    // this stays cheap with many thousand groups. routeFilter keeps the vehicles of some routes, edgeFilter
+    // keeps pairs with an included origin or destination
+    List<Map.Entry<String, TravelTimeHistogram>> largestByRoute(int n, Predicate<String> routeFilter) {
+        return largest(byRoute, n, routeFilter);
+    }
+    List<Map.Entry<String, TravelTimeHistogram>> largestByOD(int n, Predicate<String> edgeFilter, Predicate<String> routeFilter) {
+        Map<String, TravelTimeHistogram> source = byOD;
+        if (routeFilter != null) { // the pairs of the accepted routes, added up over the routes
+            source = new HashMap<>();
+            for (Map.Entry<String, Map<String, TravelTimeHistogram>> route : odByRoute.entrySet()) {
+                if (!routeFilter.test(route.getKey())) {continue;}
+                for (Map.Entry<String, TravelTimeHistogram> e : route.getValue().entrySet()) {
+                    source.computeIfAbsent(e.getKey(), k -> new TravelTimeHistogram()).add(e.getValue());
+                }
+            }
+        }
+        return largest(source, n, edgeFilter == null ? null : key -> {
+            int sep = key.indexOf(OD_SEPARATOR);
+            return edgeFilter.test(key.substring(0, sep)) || edgeFilter.test(key.substring(sep + OD_SEPARATOR.length()));
+        });
+    }
+    private static List<Map.Entry<String, TravelTimeHistogram>> largest(Map<String, TravelTimeHistogram> source, int n,
+                                                                     Predicate<String> include) {
+        PriorityQueue<Map.Entry<String, TravelTimeHistogram>> top = new PriorityQueue<>(n + 1,
+                (a, b) -> Long.compare(a.getValue().getCount(), b.getValue().getCount())); // smallest on top
+        for (Map.Entry<String, TravelTimeHistogram> e : source.entrySet()) {
+            if (include != null && !include.test(e.getKey())) {continue;}
+            if (top.size() < n) {top.add(e);}
+            else if (e.getValue().getCount() > top.peek().getValue().getCount()) {
+                top.poll();
+                top.add(e);
+            }
+        }
+        List<Map.Entry<String, TravelTimeHistogram>> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            Map.Entry<String, TravelTimeHistogram> e = top.poll();
+            result.add(0, Map.entry(e.getKey(), e.getValue().snapshot()));
+        }
+        return result;
+    }
+    private static Map<String, TravelTimeHistogram> copy(Map<String, TravelTimeHistogram> source) {
+        Map<String, TravelTimeHistogram> result = new HashMap<>();
+        for (Map.Entry<String, TravelTimeHistogram> e : source.entrySet()) {result.put(e.getKey(), e.getValue().snapshot());}
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package wrapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Vehicle changes between two published snapshot versions.
+ * Entries 0 .. getAddedCount()-1 are vehicles that appeared, the next getMovedCount() entries are vehicles
+ * whose position, angle or color changed; removed vehicles are only listed by id. Vehicles that did not
+ * change are not in the delta at all, so a consumer can keep its own state in sync in O(changes).
+ * SimulationWrapper keeps the deltas of the last steps in a ring; when a consumer asks for a version that
+ * has already left the ring it gets null and has to resync from the full WorldSnapshot.
+ */
+public final class VehicleDelta {
+    private final long fromVersion;
+    private final long toVersion;
+    private final int addedCount;
+    private final int movedCount;
+    private final String[] ids;
+    private final double[] x;
+    private final double[] y;
+    private final double[] angle;
+    private final int[] color; // packed 0xRRGGBBAA
+    private final String[] removedIDs;
+
+    VehicleDelta(long fromVersion, long toVersion, int addedCount, int movedCount,
+                 String[] ids, double[] x, double[] y, double[] angle, int[] color, String[] removedIDs) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.addedCount = addedCount;
+        this.movedCount = movedCount;
+        this.ids = ids;
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        this.color = color;
+        this.removedIDs = removedIDs;
+    }
+//===== GENERAL ===========================================
+    // the delta turns the state of snapshot fromVersion into the state of snapshot toVersion
+    public long getFromVersion() {return fromVersion;}
+    public long getToVersion() {return toVersion;}
+    public boolean isEmpty() {return addedCount == 0 && movedCount == 0 && removedIDs.length == 0;}
+//===== CHANGES ===========================================
+    public int getAddedCount() {return addedCount;}
+    public int getMovedCount() {return movedCount;}
+    // i in 0 .. getAddedCount() + getMovedCount() - 1, added vehicles first
+    public String getID(int i) {return ids[i];}
+    public double getX(int i) {return x[i];}
+    public double getY(int i) {return y[i];}
+    public double getAngle(int i) {return angle[i];}
+    public int getColor(int i) {return color[i];}
+    public int getRemovedCount() {return removedIDs.length;}
+    public String getRemovedID(int i) {return removedIDs[i];}
+//===== STATIC ============================================
+    // combine consecutive deltas (oldest first) into one
+    static VehicleDelta merge(List<VehicleDelta> steps) {
+        if (steps.size() == 1) {return steps.get(0);}
+        // latest entry per id, and whether the id was new within the merged range
+        Map<String, int[]> latest = new LinkedHashMap<>(); // id -> {step, index, added}
+        Map<String, Boolean> removed = new LinkedHashMap<>();
+        for (int s = 0; s < steps.size(); s++) {
+            VehicleDelta d = steps.get(s);
+            for (int i = 0; i < d.removedIDs.length; i++) {
+                String id = d.removedIDs[i];
+                int[] entry = latest.remove(id);
+                if (entry == null || entry[2] == 0) {removed.put(id, Boolean.TRUE);} // existed before the range
+            }
+            int n = d.addedCount + d.movedCount;
+            for (int i = 0; i < n; i++) {
+                String id = d.ids[i];
+                int[] entry = latest.get(id);
+                boolean added = i < d.addedCount;
+                if (added) {added = removed.remove(id) == null;} // removed and re-added: it only changed
+                int addedFlag = entry != null ? entry[2] : (added ? 1 : 0);
+                latest.put(id, new int[]{s, i, addedFlag});
+            }
+        }
+        int n = latest.size();
+        String[] ids = new String[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] angle = new double[n];
+        int[] color = new int[n];
+        List<int[]> ordered = new ArrayList<>(n);
+        List<String> orderedIDs = new ArrayList<>(n);
+        int addedCount = 0;
+        for (int pass = 1; pass >= 0; pass--) { // added first
+            for (Map.Entry<String, int[]> e : latest.entrySet()) {
+                if (e.getValue()[2] != pass) {continue;}
+                ordered.add(e.getValue());
+                orderedIDs.add(e.getKey());
+                if (pass == 1) {addedCount++;}
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            int[] entry = ordered.get(k);
+            VehicleDelta d = steps.get(entry[0]);
+            ids[k] = orderedIDs.get(k);
+            x[k] = d.x[entry[1]];
+            y[k] = d.y[entry[1]];
+            angle[k] = d.angle[entry[1]];
+            color[k] = d.color[entry[1]];
+        }
+        return new VehicleDelta(steps.get(0).fromVersion, steps.get(steps.size() - 1).toVersion, addedCount, n - addedCount,
+                ids, x, y, angle, color, removed.keySet().toArray(new String[0]));
+    }
+}
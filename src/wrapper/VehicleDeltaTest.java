@@ -0,0 +1,158 @@
+package wrapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+Checks for VehicleDelta.merge and SimulationWrapper.getVehicleDelta, like MainTest run by hand: java wrapper.VehicleDeltaTest
+Fixed cases for a vehicle removed and re-added, added and removed again, and moved several times within the merged
+range; random step sequences where applying the merged delta must give the same vehicles as applying every step;
+and the null (resync) answer once the requested version has left the ring. Needs no running SUMO.
+*/
+public class VehicleDeltaTest {
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        fixedCases();
+        randomSequences(new Random(42), 2000);
+        ring();
+        if (failures > 0) {
+            System.out.println("VehicleDeltaTest: " + failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("VehicleDeltaTest: all checks passed");
+    }
+
+    //===== FIXED CASES =======================================
+    private static void fixedCases() {
+        // "a" existed before the range: removed, then added again -> only a change
+        VehicleDelta d = VehicleDelta.merge(List.of(
+                step(0, Map.of(), Map.of(), "a"),
+                step(1, Map.of("a", 5.0), Map.of(), (String[]) null)));
+        check(d.getAddedCount() == 0 && d.getMovedCount() == 1 && d.getRemovedCount() == 0, "remove then re-add is a move");
+        check(d.getID(0).equals("a") && d.getX(0) == 5.0, "re-added vehicle has its new position");
+
+        // "b" appears, moves and leaves within the range -> not in the delta at all
+        d = VehicleDelta.merge(List.of(
+                step(0, Map.of("b", 1.0), Map.of(), (String[]) null),
+                step(1, Map.of(), Map.of("b", 2.0), (String[]) null),
+                step(2, Map.of(), Map.of(), "b")));
+        check(d.isEmpty(), "add then remove within the range leaves nothing");
+
+        // "c" appears and moves -> added with the last position
+        d = VehicleDelta.merge(List.of(
+                step(0, Map.of("c", 1.0), Map.of(), (String[]) null),
+                step(1, Map.of(), Map.of("c", 3.0), (String[]) null)));
+        check(d.getAddedCount() == 1 && d.getMovedCount() == 0 && d.getX(0) == 3.0, "add then move is an add at the last position");
+
+        // "e" existed: removed, re-added, removed again -> removed once
+        d = VehicleDelta.merge(List.of(
+                step(0, Map.of(), Map.of(), "e"),
+                step(1, Map.of("e", 1.0), Map.of(), (String[]) null),
+                step(2, Map.of(), Map.of(), "e")));
+        check(d.getAddedCount() + d.getMovedCount() == 0 && d.getRemovedCount() == 1 && d.getRemovedID(0).equals("e"),
+                "remove, re-add, remove is one removal");
+
+        // "f" is new: added, removed, added again -> added
+        d = VehicleDelta.merge(List.of(
+                step(0, Map.of("f", 1.0), Map.of(), (String[]) null),
+                step(1, Map.of(), Map.of(), "f"),
+                step(2, Map.of("f", 4.0), Map.of(), (String[]) null)));
+        check(d.getAddedCount() == 1 && d.getRemovedCount() == 0 && d.getX(0) == 4.0, "add, remove, add is an add");
+        check(d.getFromVersion() == 0 && d.getToVersion() == 3, "merged versions span the steps");
+    }
+
+    //===== RANDOM SEQUENCES ==================================
+    // vehicles appear, move and leave at random; merged and step-by-step application have to agree
+    private static void randomSequences(Random rnd, int runs) {
+        int bad = 0;
+        for (int run = 0; run < runs; run++) {
+            Map<String, Double> world = new HashMap<>();
+            for (int i = 0; i < 10; i++) {world.put("v" + i, (double) i);}
+            Map<String, Double> start = new HashMap<>(world);
+            List<VehicleDelta> steps = new ArrayList<>();
+            int count = 1 + rnd.nextInt(8);
+            for (int s = 0; s < count; s++) {
+                Map<String, Double> added = new LinkedHashMap<>();
+                Map<String, Double> moved = new LinkedHashMap<>();
+                List<String> removed = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    String id = "v" + i;
+                    double r = rnd.nextDouble();
+                    if (world.containsKey(id)) {
+                        if (r < 0.25) {removed.add(id);}
+                        else if (r < 0.6) {moved.put(id, rnd.nextDouble());}
+                    } else if (r < 0.3) {
+                        added.put(id, rnd.nextDouble());
+                    }
+                }
+                VehicleDelta d = step(s, added, moved, removed.toArray(new String[0]));
+                apply(world, d);
+                steps.add(d);
+            }
+            apply(start, VehicleDelta.merge(steps));
+            if (!start.equals(world)) {bad++;}
+        }
+        check(bad == 0, "merged deltas match step-by-step application (" + bad + " of " + runs + " differ)");
+    }
+
+    // what a consumer like MapCanvas does: removals first, then adds and moves
+    private static void apply(Map<String, Double> world, VehicleDelta d) {
+        for (int i = 0; i < d.getRemovedCount(); i++) {world.remove(d.getRemovedID(i));}
+        for (int i = 0; i < d.getAddedCount() + d.getMovedCount(); i++) {world.put(d.getID(i), d.getX(i));}
+    }
+
+    //===== RING ==============================================
+    private static void ring() {
+        SimulationWrapper sim = new SimulationWrapper("none.sumocfg"); // SUMO is only started by Start()
+        check(sim.getVehicleDelta(0).isEmpty(), "no steps yet gives an empty delta");
+        for (int v = 1; v <= 64; v++) {sim.publish(step(v - 1, Map.of("v" + v, (double) v), Map.of(), (String[]) null), snapshot(v));}
+        VehicleDelta all = sim.getVehicleDelta(0);
+        check(all != null && all.getAddedCount() == 64, "the whole ring can be merged");
+        sim.publish(step(64, Map.of(), Map.of(), "v1"), snapshot(65));
+        check(sim.getVehicleDelta(0) == null, "a version that left the ring asks for a resync");
+        VehicleDelta recent = sim.getVehicleDelta(1);
+        check(recent != null && recent.getAddedCount() == 63 && recent.getRemovedCount() == 1, "the oldest version still in the ring");
+        check(sim.getVehicleDelta(-1) == null, "an unknown version asks for a resync");
+        check(sim.getVehicleDelta(65).isEmpty() && sim.getVehicleDelta(70).isEmpty(), "the current version gives an empty delta");
+        // a slot overwritten by a newer step while a reader collects it
+        sim.publish(step(65, Map.of(), Map.of(), (String[]) null), snapshot(66));
+        sim.publish(step(129, Map.of(), Map.of(), (String[]) null), snapshot(66)); // slot of 66 now holds 130
+        check(sim.getVehicleDelta(60) == null, "an overwritten slot asks for a resync");
+    }
+
+    //===== HELPERS ===========================================
+    // delta from -> from + 1, positions are only x
+    private static VehicleDelta step(long from, Map<String, Double> added, Map<String, Double> moved, String... removed) {
+        int n = added.size() + moved.size();
+        String[] ids = new String[n];
+        double[] x = new double[n];
+        int k = 0;
+        for (Map<String, Double> part : List.of(added, moved)) {
+            for (Map.Entry<String, Double> e : part.entrySet()) {
+                ids[k] = e.getKey();
+                x[k++] = e.getValue();
+            }
+        }
+        return new VehicleDelta(from, from + 1, added.size(), moved.size(), ids, x, new double[n], new double[n], new int[n],
+                removed == null ? new String[0] : removed);
+    }
+
+    private static WorldSnapshot snapshot(long version) {
+        return new WorldSnapshot(version, version, 0,
+                new String[0], new double[0], new double[0], new double[0], new double[0], new int[0],
+                new String[0], new String[0], new double[0],
+                new String[0], new String[0], new int[0], new String[0][], new String[0][]);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FAIL " + what);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package wrapper;
+
+// one vehicle for SimulationWrapper.addVehicles, typeID null means DEFAULT_VEHTYPE
+public record VehicleSpec(String id, String routeID, String typeID) {
+    public VehicleSpec(String id, String routeID) {
+        this(id, routeID, null);
+    }
+}
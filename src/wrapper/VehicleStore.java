@@ -0,0 +1,151 @@
+package wrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * Live vehicle state kept as parallel primitive columns indexed by slot.
+ * A vehicle gets a slot when it departs and gives it back to the free list when it arrives,
+ * so subscription results are written straight into the arrays without allocating.
+ * Owned by the Sumo-Stepper thread, other threads read vehicles through WorldSnapshot.
+ */
+class VehicleStore {
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    String[] ids;
+    double[] x;
+    double[] y;
+    double[] speed;
+    double[] angle;
+    int[] rgba; // packed 0xRRGGBBAA
+    // static attributes, filled from the first subscription result and kept until arrival
+    String[] typeIDs;
+    String[] routeIDs;
+    double[] length;
+    // trip, for travel times: departure time and first/last normal edge seen
+    double[] departTime;
+    String[] originEdge;
+    String[] lastEdge;
+    boolean[] alive;
+    boolean[] hasPosition; // false until the first position arrives
+    // state as of the last published snapshot, used to build VehicleDelta
+    boolean[] published;
+    double[] pubX;
+    double[] pubY;
+    double[] pubAngle;
+    int[] pubRgba;
+    final List<String> removedSincePublish = new ArrayList<>(); // published vehicles that arrived since
+    private int[] freeSlots;
+    private int freeCount = 0;
+    private int highWater = 0; // slots below this index have been used at least once
+    private int size = 0;
+
+    VehicleStore(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        ids = new String[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        speed = new double[capacity];
+        angle = new double[capacity];
+        rgba = new int[capacity];
+        typeIDs = new String[capacity];
+        routeIDs = new String[capacity];
+        length = new double[capacity];
+        departTime = new double[capacity];
+        originEdge = new String[capacity];
+        lastEdge = new String[capacity];
+        alive = new boolean[capacity];
+        hasPosition = new boolean[capacity];
+        published = new boolean[capacity];
+        pubX = new double[capacity];
+        pubY = new double[capacity];
+        pubAngle = new double[capacity];
+        pubRgba = new int[capacity];
+        freeSlots = new int[capacity];
+    }
+    //=================GETTER================================
+    int size() {return size;}
+    // every alive slot is below this index
+    int highWater() {return highWater;}
+    // slot of a vehicle, -1 if unknown
+    int slotOf(String inputID) {
+        Integer slot = slots.get(inputID);
+        return slot == null ? -1 : slot;
+    }
+    //=================SETTER================================
+    // take a slot for a departed vehicle, reusing one freed by an arrival if possible
+    int add(String inputID, int inputRgba) {
+        Integer existing = slots.get(inputID);
+        if (existing != null) {return existing;}
+        int slot;
+        if (freeCount > 0) {slot = freeSlots[--freeCount];}
+        else {
+            if (highWater == ids.length) {grow();}
+            slot = highWater++;
+        }
+        ids[slot] = inputID;
+        x[slot] = 0;
+        y[slot] = 0;
+        speed[slot] = 0;
+        angle[slot] = 0;
+        rgba[slot] = inputRgba;
+        typeIDs[slot] = null;
+        routeIDs[slot] = null;
+        length[slot] = 0;
+        departTime[slot] = Double.NaN;
+        originEdge[slot] = null;
+        lastEdge[slot] = null;
+        alive[slot] = true;
+        hasPosition[slot] = false;
+        published[slot] = false;
+        slots.put(inputID, slot);
+        size++;
+        return slot;
+    }
+    // release the slot of an arrived vehicle
+    boolean remove(String inputID) {
+        Integer slot = slots.remove(inputID);
+        if (slot == null) {return false;}
+        alive[slot] = false;
+        hasPosition[slot] = false;
+        if (published[slot]) {removedSincePublish.add(inputID);}
+        published[slot] = false;
+        ids[slot] = null;
+        typeIDs[slot] = null;
+        routeIDs[slot] = null;
+        originEdge[slot] = null;
+        lastEdge[slot] = null;
+        freeSlots[freeCount++] = slot;
+        size--;
+        return true;
+    }
+    void setPosition(int slot, double inputX, double inputY) {
+        x[slot] = inputX;
+        y[slot] = inputY;
+        hasPosition[slot] = true;
+    }
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+        rgba = Arrays.copyOf(rgba, capacity);
+        typeIDs = Arrays.copyOf(typeIDs, capacity);
+        routeIDs = Arrays.copyOf(routeIDs, capacity);
+        length = Arrays.copyOf(length, capacity);
+        departTime = Arrays.copyOf(departTime, capacity);
+        originEdge = Arrays.copyOf(originEdge, capacity);
+        lastEdge = Arrays.copyOf(lastEdge, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        hasPosition = Arrays.copyOf(hasPosition, capacity);
+        published = Arrays.copyOf(published, capacity);
+        pubX = Arrays.copyOf(pubX, capacity);
+        pubY = Arrays.copyOf(pubY, capacity);
+        pubAngle = Arrays.copyOf(pubAngle, capacity);
+        pubRgba = Arrays.copyOf(pubRgba, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+}
@@ -3,44 +3,15 @@ package wrapper;
 import it.polito.appeal.traci.SumoTraciConnection;
 import de.tudresden.sumo.cmd.Vehicle;
 import de.tudresden.sumo.cmd.Vehicletype;
-import de.tudresden.sumo.objects.SumoPosition2D;
 import de.tudresden.sumo.objects.SumoColor;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Locale;
 
+// TraCI commands for single vehicles, the vehicle state itself lives in VehicleStore
 class VehicleWrapper {
-    String ID;
-    SumoColor color;
-    double speed;
-    SumoPosition2D position;
-    double angle;
-    // constructor
-    VehicleWrapper(String inputID, SumoColor inputColor){
-        ID = inputID;
-        color = inputColor;
-        System.out.println("Added vehicle " + inputID + ".");
-    }
     //=================GETTER================================
-    // get Vehicle ID
-    public String getID(int po) {
-        if (po == 1) {System.out.println(ID);}
-        return ID;
-    }
-
-    // get Vehicle position
-    public SumoPosition2D getPosition(int po) {
-        if (po == 1 && position != null) {System.out.println("Position of "+ ID +" is " + position.x + " " + position.y);}
-        return position;
-    }
-
-
-    // get Vehicle speed
-    public double getSpeed(int po) {
-        if (po == 1) {System.out.println("Speed of "+ ID +" is " + speed);}
-        return speed;
-    }
-
     // get Vehicle's ID list
     public static List<String> getIDList(SimulationWrapper temp, int po) { // the method should be static, because it returns all vehicles, not one.
         try {
@@ -60,7 +31,7 @@ class VehicleWrapper {
     }
 
     // get Vehicle's type ID
-    public String getTypeID(SimulationWrapper temp, int po) {
+    public static String getTypeID(SimulationWrapper temp, String ID, int po) {
         try {
             String typeID = (String) temp.conn.do_job_get(Vehicle.getTypeID(ID));
             if (po==1) {System.out.println(String.format("Type ID of vehicle %s: %s", typeID, ID));}
@@ -73,24 +44,27 @@ class VehicleWrapper {
     }
 
     // get Vehicle's color
-    public SumoColor getColor(int po) {
-        // SUMO default color (undefined)
-        if (color.r == -1 && color.g == -1 && color.b == 0 && color.a == -1 && po == 1) {
-            System.out.println("Vehicle " + ID + " has no custom color (using SUMO default which has the format r#g#b#a): " + color);
+    public static SumoColor getColor(SimulationWrapper temp, String ID, int po) {
+        try {
+            SumoColor color = (SumoColor) temp.conn.do_job_get(Vehicle.getColor(ID));
+            // SUMO default color (undefined)
+            if (color.r == -1 && color.g == -1 && color.b == 0 && color.a == -1 && po == 1) {
+                System.out.println("Vehicle " + ID + " has no custom color (using SUMO default which has the format r#g#b#a): " + color);
+            }
+            else if (po == 1) {System.out.println(String.format("Color of vehicle " + ID + ": " + color));}
+            return color;
         }
-        else if (po == 1) {System.out.println(String.format("Color of vehicle " + ID + ": " + color));}
-        return color;
-    }
-    public double getAngle(int po) {
-        if (po == 1) {System.out.println("Vehicle " + ID + " is facing " + angle);}
-        return angle;
+        catch(Exception e) {
+            System.out.println("Cannot get the color of vehicle " + ID + e.getMessage());
+        }
+        return null;
     }
     //=================SETTER================================
     // set Vehicle's speed
-    public void setSpeed(SimulationWrapper temp, double inputSpeed, int po) {
+    public static void setSpeed(SimulationWrapper temp, String ID, double inputSpeed, int po) {
         try {
             temp.conn.do_job_set(Vehicle.setSpeed(ID, inputSpeed));
-            if  (po==1) {System.out.println(String.format("Set the speed of the vehicle that has the ID %s into %.3f m/s", ID, speed));}
+            if  (po==1) {System.out.println(String.format("Set the speed of the vehicle that has the ID %s into %.3f m/s", ID, inputSpeed));}
         }
         catch(Exception e) {
             System.out.println("Cannot set the speed of the vehicle that has the ID " + ID + e.getMessage());
@@ -98,21 +72,31 @@ class VehicleWrapper {
     }
 
     // set Vehicle's color
-    public void setColor(SimulationWrapper temp, int r, int g, int b, int a) {
+    public static boolean setColor(SimulationWrapper temp, String ID, int r, int g, int b, int a) {
         try {
             SumoColor inputColor = new SumoColor(r, g, b, a);
             temp.conn.do_job_set(Vehicle.setColor(ID, inputColor));
-            color = inputColor;
+            return true;
         }
         catch(Exception e) {
             System.out.println("Cannot set the color of the vehicle that has the ID " + ID + e.getMessage());
         }
+        return false;
     }
     //=================STATIC================================
     protected static void addVehicle(SimulationWrapper temp, String inputID, String inputRoute) {
+        addVehicle(temp, inputID, inputRoute, "DEFAULT_VEHTYPE", -1);
+    }
+    // depart is the simulation time in seconds the vehicle should be inserted at, negative = now.
+    // addFull takes it as text in seconds; the legacy add reads an int as milliseconds
+    protected static boolean addVehicle(SimulationWrapper temp, String inputID, String inputRoute, String inputType, double depart) {
         try {
-            temp.conn.do_job_set(Vehicle.add(inputID, "DEFAULT_VEHTYPE", inputRoute, 0, 0, 0, (byte)0));
+            String time = depart < 0 ? "now" : String.format(Locale.ROOT, "%.3f", depart);
+            temp.conn.do_job_set(Vehicle.addFull(inputID, inputRoute, inputType, time, "first", "base", "0",
+                    "current", "max", "current", "", "", "", 0, 0));
+            return true;
         }
         catch(Exception e){System.out.println("add vehicle fail");}
+        return false;
     }
-}
\ No newline at end of file
+}
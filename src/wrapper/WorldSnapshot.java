@@ -0,0 +1,116 @@
+package wrapper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Immutable view of the simulation after one Step().
+ * SimulationWrapper builds a new snapshot on the Sumo-Stepper thread and swaps it in
+ * with a single atomic reference, so the FX thread can read every vehicle and traffic
+ * light of one step without locks and without ever seeing a half-updated state.
+ */
+public final class WorldSnapshot {
+    static final WorldSnapshot EMPTY = new WorldSnapshot(0, 0, 0,
+            new String[0], new double[0], new double[0], new double[0], new double[0], new int[0],
+            new String[0], new String[0], new double[0],
+            new String[0], new String[0], new int[0], new String[0][], new String[0][]);
+
+    private final long version;
+    private final double time; // simulation time in seconds
+    // vehicles, index i describes the same vehicle in every column
+    private final int vehicleCount;
+    private final String[] vehicleIDs;
+    private final double[] x;
+    private final double[] y;
+    private final double[] angle;
+    private final double[] speed;
+    private final int[] color; // packed 0xRRGGBBAA
+    private final String[] typeIDs;
+    private final String[] routeIDs;
+    private final double[] length;
+    private final double meanSpeed; // over all vehicles of the step, computed once on the stepper
+    // traffic lights, from/to lane arrays are shared between snapshots (they never change)
+    private final String[] tlIDs;
+    private final String[] tlStates;
+    private final int[] tlPhases;
+    private final String[][] tlFromLanes;
+    private final String[][] tlToLanes;
+
+    private volatile Map<String, Integer> vehicleIndex; // built lazily for per-id lookups
+
+    WorldSnapshot(long version, double time, int vehicleCount,
+                  String[] vehicleIDs, double[] x, double[] y, double[] angle, double[] speed, int[] color,
+                  String[] typeIDs, String[] routeIDs, double[] length,
+                  String[] tlIDs, String[] tlStates, int[] tlPhases, String[][] tlFromLanes, String[][] tlToLanes) {
+        this.version = version;
+        this.time = time;
+        this.vehicleCount = vehicleCount;
+        this.vehicleIDs = vehicleIDs;
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        this.speed = speed;
+        this.color = color;
+        this.typeIDs = typeIDs;
+        this.routeIDs = routeIDs;
+        this.length = length;
+        double sum = 0;
+        for (int i = 0; i < vehicleCount; i++) {sum += speed[i];}
+        this.meanSpeed = vehicleCount > 0 ? sum / vehicleCount : 0;
+        this.tlIDs = tlIDs;
+        this.tlStates = tlStates;
+        this.tlPhases = tlPhases;
+        this.tlFromLanes = tlFromLanes;
+        this.tlToLanes = tlToLanes;
+    }
+//===== GENERAL ===========================================
+    // increases by one for every published step
+    public long getVersion() {return version;}
+    public double getTime() {return time;}
+//===== VEHICLE ===========================================
+    public int getVehicleCount() {return vehicleCount;}
+    // mean speed of all vehicles in m/s, 0 without vehicles
+    public double getMeanSpeed() {return meanSpeed;}
+    public String getVehicleID(int i) {return vehicleIDs[i];}
+    public double getVehicleX(int i) {return x[i];}
+    public double getVehicleY(int i) {return y[i];}
+    public double getVehicleAngle(int i) {return angle[i];}
+    public double getVehicleSpeed(int i) {return speed[i];}
+    // color packed as 0xRRGGBBAA
+    public int getVehicleColor(int i) {return color[i];}
+    // static attributes, null/0 until SUMO reported them
+    public String getVehicleTypeID(int i) {return typeIDs[i];}
+    public String getVehicleRouteID(int i) {return routeIDs[i];}
+    public double getVehicleLength(int i) {return length[i];}
+    // index of a vehicle in this snapshot, -1 if it is not present
+    public int indexOfVehicle(String inputID) {
+        Map<String, Integer> index = vehicleIndex;
+        if (index == null) {
+            index = new HashMap<>(vehicleCount * 2);
+            for (int i = 0; i < vehicleCount; i++) {index.put(vehicleIDs[i], i);}
+            vehicleIndex = index;
+        }
+        Integer i = index.get(inputID);
+        return i == null ? -1 : i;
+    }
+//===== TRAFFIC LIGHT =====================================
+    public int getTLCount() {return tlIDs.length;}
+    public String getTLID(int i) {return tlIDs[i];}
+    // current red-yellow-green state, may be null before the first subscription result
+    public String getTLState(int i) {return tlStates[i];}
+    // index of the current phase in the running program, -1 before the first subscription result
+    public int getTLPhase(int i) {return tlPhases[i];}
+    public int getTLLinkCount(int i) {return tlFromLanes[i].length;}
+    public String getTLFromLane(int i, int link) {return tlFromLanes[i][link];}
+    public String getTLToLane(int i, int link) {return tlToLanes[i][link];}
+    public int indexOfTL(String inputID) {
+        for (int i = 0; i < tlIDs.length; i++) {
+            if (tlIDs[i].equals(inputID)) {return i;}
+        }
+        return -1;
+    }
+//===== STATIC ============================================
+    static int packColor(int r, int g, int b, int a) {
+        return ((r & 0xFF) << 24) | ((g & 0xFF) << 16) | ((b & 0xFF) << 8) | (a & 0xFF);
+    }
+}